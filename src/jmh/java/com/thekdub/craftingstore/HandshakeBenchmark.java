@@ -0,0 +1,148 @@
+package com.thekdub.craftingstore;
+
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs poll cycles, a /v4/queue fetch followed by a /v4/queue/markComplete, against a local TLS mock server and
+ * reports the TLS handshakes and cycles of each iteration as the handshakes and cycles counters.
+ * The shared layout is the single pooled ApiClient. The split layout gives each endpoint its own client, like the
+ * separate OkHttp and Apache HttpClient stacks used before. The unpooled layout keeps no idle connections.
+ * With idle set to expired, pooled connections are evicted before each cycle, as when the API closes connections
+ * left idle between polls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandshakeBenchmark {
+
+  @Param({"shared", "split", "unpooled"})
+  private String layout;
+
+  @Param({"warm", "expired"})
+  private String idle;
+
+  private MockWebServer server;
+  private ApiClient[] clients;
+  private OkHttpClient queueClient;
+  private OkHttpClient completeClient;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    String host = InetAddress.getByName("localhost").getCanonicalHostName();
+    HeldCertificate certificate = new HeldCertificate.Builder().addSubjectAlternativeName(host).build();
+    HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+          .heldCertificate(certificate)
+          .build();
+    HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+          .addTrustedCertificate(certificate.certificate())
+          .build();
+    server = new MockWebServer();
+    server.useHttps(serverCertificates.sslSocketFactory(), false);
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return new MockResponse().setBody(request.getPath().startsWith("/v4/queue/markComplete") ?
+              "{\"success\":true}" : "{\"success\":true,\"result\":[]}");
+      }
+    });
+    server.start();
+
+    YamlConfiguration config = new YamlConfiguration();
+    if (layout.equals("unpooled")) {
+      config.set("http.max-idle-connections", 0);
+    }
+    clients = new ApiClient[layout.equals("split") ? 2 : 1];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = new ApiClient(config);
+    }
+    queueClient = trusting(clients[0], clientCertificates);
+    completeClient = clients.length == 1 ? queueClient : trusting(clients[1], clientCertificates);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    for (ApiClient client : clients) {
+      client.shutdown();
+    }
+    server.shutdown();
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Counters {
+    public long handshakes;
+    public long cycles;
+  }
+
+  @Benchmark
+  public void pollCycle(Counters counters) throws IOException {
+    if (idle.equals("expired")) {
+      for (ApiClient client : clients) {
+        client.getClient().connectionPool().evictAll();
+      }
+    }
+    long before = handshakes();
+    execute(queueClient, new Request.Builder().url(server.url("/v4/queue")).build());
+    execute(completeClient, new Request.Builder().url(server.url("/v4/queue/markComplete"))
+          .post(new FormBody.Builder().add("removeIds", "[1,2,3]").build())
+          .build());
+    counters.handshakes += handshakes() - before;
+    counters.cycles++;
+  }
+
+  private long handshakes() {
+    long handshakes = 0;
+    for (ApiClient client : clients) {
+      handshakes += client.getHandshakes();
+    }
+    return handshakes;
+  }
+
+  private static void execute(OkHttpClient client, Request request) throws IOException {
+    try (Response response = client.newCall(request).execute()) {
+      if (response.body() != null) {
+        response.body().string();
+      }
+    }
+  }
+
+  /**
+   * Returns the passed client's OkHttp client, sharing its pool and listener, trusting the mock server certificate.
+   */
+  private static OkHttpClient trusting(ApiClient client, HandshakeCertificates certificates) {
+    return client.getClient().newBuilder()
+          .sslSocketFactory(certificates.sslSocketFactory(), certificates.trustManager())
+          .build();
+  }
+}
@@ -0,0 +1,81 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a /v4/queue payload with a new ObjectMapper per call, as APIHandler used to, against the shared
+ * Json readers and the streaming parser. Also compares Command.toString, which every [PROCESSED] log line calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+  @Param("1000")
+  private int commands;
+
+  private byte[] payload;
+  private Command command;
+
+  @Setup
+  public void setup() throws IOException {
+    CommandQueue queue = new CommandQueue();
+    queue.setSuccess(true);
+    ArrayList<Command> result = new ArrayList<>();
+    for (int i = 0; i < commands; i++) {
+      result.add(new Command(1000000 + i, String.valueOf(2000000 + i / 10), "give Player" + (i % 50) + " 264 1",
+            "Player" + (i % 50), "1234567890abcdef1234567890abcdef", "Package " + (i % 20), 4.99, 499, 0, null,
+            i % 2 == 0));
+    }
+    queue.setResult(result);
+    payload = Json.WRITER.writeValueAsBytes(queue);
+    command = result.get(0);
+  }
+
+  @Benchmark
+  public CommandQueue readPerCallMapper() throws IOException {
+    ObjectMapper mapper = new ObjectMapper();
+    return mapper.readValue(new String(payload, StandardCharsets.UTF_8), CommandQueue.class);
+  }
+
+  @Benchmark
+  public CommandQueue readSharedReader() throws IOException {
+    return Json.COMMAND_QUEUE.readValue(new ByteArrayInputStream(payload));
+  }
+
+  @Benchmark
+  public boolean readStreaming(Blackhole blackhole) throws IOException {
+    return APIHandler.readCommands(new ByteArrayInputStream(payload), blackhole::consume);
+  }
+
+  @Benchmark
+  public String toStringPerCallMapper() throws IOException {
+    return new ObjectMapper().writeValueAsString(command);
+  }
+
+  @Benchmark
+  public String toStringSharedWriter() {
+    return command.toString();
+  }
+}
@@ -0,0 +1,103 @@
+package com.thekdub.craftingstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares Time.parseTimeStr and Time.parseTimeStrs against the regex parser they replaced, over a mix of valid and
+ * invalid time strings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseTimeBenchmark {
+
+  private static final String[] UNITS = {"y", "mo", "w", "d", "h", "m", "s", ""};
+
+  @Param("1000")
+  private int strings;
+
+  private ArrayList<String> times;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(13);
+    times = new ArrayList<>();
+    for (int i = 0; i < strings; i++) {
+      StringBuilder time = new StringBuilder();
+      int start = random.nextInt(UNITS.length - 1);
+      for (int unit = start; unit < UNITS.length; unit += 1 + random.nextInt(3)) {
+        time.append(1 + random.nextInt(60)).append(UNITS[unit]);
+      }
+      // One in ten strings is invalid.
+      times.add(i % 10 == 0 ? "x" + time : time.toString());
+    }
+  }
+
+  @Benchmark
+  public void parseRegex(Blackhole blackhole) {
+    for (String time : times) {
+      blackhole.consume(regexParseTimeStr(time));
+    }
+  }
+
+  @Benchmark
+  public void parseScanner(Blackhole blackhole) {
+    for (String time : times) {
+      blackhole.consume(Time.parseTimeStr(time));
+    }
+  }
+
+  @Benchmark
+  public long[] parseScannerBulk() {
+    return Time.parseTimeStrs(times);
+  }
+
+  /**
+   * The regex parser Time.parseTimeStr replaced, compiling its patterns on every call as it did.
+   */
+  private static long regexParseTimeStr(String time) {
+    if (!time.matches("^([0-9]+y)?([0-9]+y)?([0-9]+mo)?([0-9]+w)?([0-9]+d)?([0-9]+h)?([0-9]+m)?([0-9]+s?)?$")) {
+      return -1;
+    }
+    Pattern timePattern = Pattern.compile("(?:([0-9]+)\\s*y[a-z]*[,\\s]*)?(?:([0-9]+)\\s*mo[a-z]*[,\\s]*)?(?:" +
+          "([0-9]+)\\s*w[a-z]*[,\\s]*)?(?:([0-9]+)\\s*d[a-z]*[,\\s]*)?(?:([0-9]+)\\s*h[a-z]*[,\\s]*)?(?:(" +
+          "[0-9]+)\\s*m[a-z]*[,\\s]*)?(?:([0-9]+)\\s*(?:s[a-z]*)?)?", 2);
+    Matcher m = timePattern.matcher(time);
+    long[] values = new long[7];
+    long[] units = {31536000000L, 2628000000L, 604800000L, 86400000L, 3600000L, 60000L, 1000L};
+    while (m.find()) {
+      for (int i = 1; i <= 7; i++) {
+        if (m.group(i) != null && !m.group(i).isEmpty()) {
+          values[i - 1] = Integer.parseInt(m.group(i));
+        }
+      }
+    }
+    long val = 0;
+    long sum = 0;
+    for (int i = 0; i < 7; i++) {
+      val += values[i] * units[i];
+      sum += values[i];
+    }
+    return val < 0 ? Long.MAX_VALUE - 1 : sum > 0 ? val : -1;
+  }
+}
@@ -0,0 +1,69 @@
+package com.thekdub.craftingstore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Time.now, Time.today and Time.millisToDateTime, which use cached java.time formatters, against a new
+ * SimpleDateFormat per call as Time used to. Every log line calls Time.now.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeBenchmark {
+
+  private static final String PATTERN = "MM-dd-yyyy HH:mm";
+
+  private final long millis = 1699164000000L;
+
+  @Benchmark
+  public String nowPerCallFormat() {
+    return perCall(System.currentTimeMillis(), "HH:mm:ss z");
+  }
+
+  @Benchmark
+  public String nowCached() {
+    return Time.now();
+  }
+
+  @Benchmark
+  public String todayPerCallFormat() {
+    return perCall(System.currentTimeMillis(), "yyyy-MM-dd");
+  }
+
+  @Benchmark
+  public String todayCached() {
+    return Time.today();
+  }
+
+  @Benchmark
+  public String dateTimePerCallFormat() {
+    return perCall(millis, PATTERN);
+  }
+
+  @Benchmark
+  public String dateTimeCached() {
+    return Time.millisToDateTime(millis, PATTERN);
+  }
+
+  private static String perCall(long millis, String pattern) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    format.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    return format.format(new Date(millis));
+  }
+}
@@ -0,0 +1,100 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-player queries of TransactionStore, answered from its secondary indexes over memory-mapped
+ * columns, against scanning the payments as Transaction objects, as a TransactionList held in memory would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionStoreBenchmark {
+
+  @Param("100000")
+  private int payments;
+
+  @Param("1000")
+  private int players;
+
+  private File folder;
+  private TransactionStore store;
+  private ArrayList<Transaction> list;
+  private int next = 0;
+
+  @Setup
+  public void setup() throws IOException {
+    folder = Files.createTempDirectory("craftingstore-bench").toFile();
+    CraftingStore.setLog(new Logger(new YamlConfiguration(), folder));
+    store = new TransactionStore(new File(folder, "payments"));
+    list = new ArrayList<>();
+    for (int id = 1; id <= payments; id++) {
+      Transaction transaction = new Transaction();
+      transaction.setId(id);
+      transaction.setTimestamp(1700000000L + id * 60L);
+      transaction.setPrice(1 + id % 50);
+      transaction.setPackageName("Package " + id % 40);
+      transaction.setInGameName("Player" + id % players);
+      transaction.setUuid(String.format("%032x", id % players));
+      transaction.setGateway("paypal");
+      transaction.setStatus("DELIVERED");
+      list.add(transaction);
+    }
+    for (int from = 0; from < payments; from += 1000) {
+      store.append(list.subList(from, Math.min(payments, from + 1000)));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    store.close();
+    CraftingStore.getLog().close();
+  }
+
+  @Benchmark
+  public double revenueByPlayerIndexed() {
+    return store.revenueByPlayer(nextPlayer());
+  }
+
+  @Benchmark
+  public double revenueByPlayerScan() {
+    String player = nextPlayer();
+    double sum = 0;
+    for (Transaction transaction : list) {
+      if (player.equalsIgnoreCase(transaction.getInGameName())) {
+        sum += transaction.getPrice();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int countByUuidIndexed() {
+    return store.countByUuid(String.format("%032x", next++ % players));
+  }
+
+  private String nextPlayer() {
+    return "player" + next++ % players;
+  }
+}
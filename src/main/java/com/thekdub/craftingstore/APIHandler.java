@@ -1,99 +1,96 @@
 package com.thekdub.craftingstore;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
-
-import javax.net.ssl.SSLContext;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.bukkit.configuration.ConfigurationSection;
+
 import java.io.IOException;
-import java.security.KeyManagementException;
+import java.io.InputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class APIHandler {
 
-  private static final OkHttpClient client = new OkHttpClient().newBuilder()
-        .connectTimeout(10, TimeUnit.SECONDS)
-        .writeTimeout(10, TimeUnit.SECONDS)
-        .callTimeout(10, TimeUnit.SECONDS)
-        .readTimeout(10, TimeUnit.SECONDS)
-        .build();
-  private static final HttpClient httpClient;
+  private static final String DEFAULT_BASE_URL = "https://api.craftingstore.net";
 
-  static {
-    HttpClient client;
-    try {
-      SSLContext context = SSLContext.getInstance("TLSv1.2");
-      context.init(null, null, null);
-      client = HttpClients.custom().setSSLContext(context).build();
-    } catch (NoSuchAlgorithmException | KeyManagementException e) {
-      e.printStackTrace();
-      client = HttpClients.createDefault();
-    }
-    httpClient = client;
+  private static volatile ApiClient client = null;
+  private static volatile String baseUrl = DEFAULT_BASE_URL;
+
+  public enum Poll {
+    UPDATED,
+    UNCHANGED,
+    FAILED
   }
 
-  public static TransactionList getTransactions() {
-    Request request = new Request.Builder()
-          .addHeader("token", CraftingStore.getInstance().getConfig().getString("token", ""))
-          .url("https://api.craftingstore.net/v7/payments")
-          .build();
-    try (Response response = client.newCall(request).execute(); ResponseBody body = response.body()) {
-      if (response.isSuccessful() && body != null) {
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(body.string(), TransactionList.class);
-      }
-    } catch (IOException e) {
-      CraftingStore.getLog().log("[ERROR] Unable to retrieve transactions! " + e.getMessage());
-    }
-    return new TransactionList();
+  public static void init() {
+    init(CraftingStore.getInstance().getConfig());
   }
 
-  public static CommandQueue getCommands() {
-    Request request = new Request.Builder()
-          .addHeader("token", CraftingStore.getInstance().getConfig().getString("token", ""))
-          .url("https://api.craftingstore.net/v4/queue")
-          .build();
-    try (Response response = client.newCall(request).execute(); ResponseBody body = response.body()) {
-      if (response.isSuccessful() && body != null) {
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(body.string(), CommandQueue.class);
-      }
-    } catch (IOException e) {
-      CraftingStore.getLog().log("[ERROR] Unable to retrieve commands! " + e.getMessage());
+  /**
+   * Creates the shared client and base URL from the http settings of the passed config.
+   *
+   * @param config the plugin config.
+   */
+  public static void init(ConfigurationSection config) {
+    shutdown();
+    client = new ApiClient(config);
+    baseUrl = config.getString("http.base-url", DEFAULT_BASE_URL).replaceAll("/+$", "");
+    ApiClient current = client;
+    Metrics.counter("http_requests_total", current::getRequests);
+    Metrics.counter("http_failures_total", current::getFailures);
+    Metrics.counter("http_connects_total", current::getConnects);
+    Metrics.counter("http_connections_reused_total", current::getReusedConnections);
+    Metrics.counter("http_tls_handshakes_total", current::getHandshakes);
+  }
+
+  public static void shutdown() {
+    if (client != null) {
+      client.shutdown();
+      client = null;
     }
-    return new CommandQueue();
   }
 
-  public static boolean complete(int[] ids) {
-    ObjectMapper mapper = new ObjectMapper();
-    HttpPost req = new HttpPost("https://api.craftingstore.net/v4/queue/markComplete");
-    req.setConfig(RequestConfig.custom().setSocketTimeout(10000).setConnectTimeout(10000).setConnectTimeout(10000).build());
-    req.addHeader("token", CraftingStore.getInstance().getConfig().getString("token", ""));
-    ArrayList<BasicNameValuePair> params = new ArrayList<>();
+  public static ApiClient getClient() {
+    return client;
+  }
+
+  public static String getBaseUrl() {
+    return baseUrl;
+  }
+
+  static byte[] sha256(byte[] bytes) {
     try {
-      params.add(new BasicNameValuePair("removeIds", mapper.writeValueAsString(ids)));
-      req.setEntity(new UrlEncodedFormEntity(params));
-      HttpResponse resp = null;
-      resp = httpClient.execute(req);
-      EntityUtils.consumeQuietly(resp.getEntity());
-    } catch (IOException e) {
-      CraftingStore.getLog().log("[ERROR] Unable to complete commands " + Arrays.toString(ids) + "! " + e.getMessage());
-      return false;
+      return MessageDigest.getInstance("SHA-256").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static boolean readCommands(InputStream in, Consumer<Command> consumer) throws IOException {
+    boolean success = false;
+    try (JsonParser parser = Json.MAPPER.getFactory().createParser(in)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return false;
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if (field.equals("success")) {
+          success = token == JsonToken.VALUE_TRUE;
+        }
+        else if (field.equals("result") && token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            consumer.accept(Json.COMMAND.readValue(parser));
+          }
+        }
+        else {
+          parser.skipChildren();
+        }
+      }
     }
-    return true;
+    return success;
   }
 
   private static class RemoveIDs {
@@ -0,0 +1,131 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Marks dispatched commands complete in chunks, retrying failed chunks with exponential backoff.
+ * IDs stay in flight until they are acknowledged, so failed chunks are never dispatched again.
+ * Unacknowledged IDs are recorded in the Journal, so retries survive a restart.
+ */
+public class Acknowledger {
+
+  /**
+   * The Dispatcher providing dispatched IDs.
+   */
+  private final Dispatcher dispatcher;
+  /**
+   * The Journal recording acknowledged IDs.
+   */
+  private final Journal journal;
+  /**
+   * The store the IDs are acknowledged with.
+   */
+  private final StoreClient client;
+  /**
+   * The maximum number of IDs sent per request.
+   */
+  private final int chunkSize;
+  /**
+   * The delay before the first retry of a failed chunk, in milliseconds.
+   */
+  private final long retryDelay;
+  /**
+   * The longest delay between retries of a failed chunk, in milliseconds.
+   */
+  private final long maxRetryDelay;
+  /**
+   * Chunks that failed and are waiting to be retried.
+   */
+  private final ArrayList<Retry> retries = new ArrayList<>();
+
+  /**
+   * Creates a new Acknowledger using the acknowledge settings from the passed config.
+   *
+   * @param dispatcher the Dispatcher providing dispatched IDs.
+   * @param journal    the Journal recording acknowledged IDs.
+   * @param client     the store the IDs are acknowledged with.
+   * @param config     the plugin config.
+   */
+  public Acknowledger(Dispatcher dispatcher, Journal journal, StoreClient client, ConfigurationSection config) {
+    this.dispatcher = dispatcher;
+    this.journal = journal;
+    this.client = client;
+    this.chunkSize = Math.max(1, config.getInt("acknowledge.chunk-size", 100));
+    this.retryDelay = Math.max(1, config.getLong("acknowledge.retry-delay", 30)) * 1000L;
+    this.maxRetryDelay = Math.max(retryDelay, config.getLong("acknowledge.max-retry-delay", 900) * 1000L);
+  }
+
+  /**
+   * Sends all newly dispatched IDs and any retries that are due.
+   *
+   * @param force whether to retry failed chunks regardless of their backoff.
+   */
+  public synchronized void flush(boolean force) {
+    long now = System.currentTimeMillis();
+    ArrayList<Retry> due = new ArrayList<>();
+    Iterator<Retry> iterator = retries.iterator();
+    while (iterator.hasNext()) {
+      Retry retry = iterator.next();
+      if (force || retry.next <= now) {
+        iterator.remove();
+        due.add(retry);
+      }
+    }
+    for (Retry retry : due) {
+      send(retry.ids, retry.attempts);
+    }
+    int[] completed = dispatcher.drainCompleted();
+    for (int i = 0; i < completed.length; i += chunkSize) {
+      send(Arrays.copyOfRange(completed, i, Math.min(completed.length, i + chunkSize)), 0);
+    }
+  }
+
+  /**
+   * Returns the number of IDs waiting to be retried.
+   *
+   * @return the number of IDs in failed chunks.
+   */
+  public synchronized int getRetryCount() {
+    return retries.stream().mapToInt(retry -> retry.ids.length).sum();
+  }
+
+  /**
+   * Returns when the next failed chunk is due to be retried.
+   *
+   * @return the earliest retry time in epoch milliseconds, or Long.MAX_VALUE if nothing is waiting.
+   */
+  synchronized long getNextRetry() {
+    return retries.stream().mapToLong(retry -> retry.next).min().orElse(Long.MAX_VALUE);
+  }
+
+  private void send(int[] ids, int attempts) {
+    if (client.complete(ids)) {
+      journal.acknowledged(ids);
+      dispatcher.release(ids);
+      CraftingStore.getLog().log("[SUCCESS] ID completion successful! " + Arrays.toString(ids));
+    }
+    else {
+      Metrics.increment(client.metric("acknowledge_failures_total"));
+      long delay = Math.min(maxRetryDelay, retryDelay << Math.min(attempts, 20));
+      retries.add(new Retry(ids, attempts + 1, System.currentTimeMillis() + delay));
+      CraftingStore.getLog().log("[FAILURE] ID completion failed! Retrying in " +
+            Time.millisToShortReadablePrecise(delay) + ". " + Arrays.toString(ids));
+    }
+  }
+
+  private static class Retry {
+    private final int[] ids;
+    private final int attempts;
+    private final long next;
+
+    private Retry(int[] ids, int attempts, long next) {
+      this.ids = ids;
+      this.attempts = attempts;
+      this.next = next;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Merges commands for the same player that differ only in their quantity argument, such as the many
+ * "give Notch 264 1" commands of a bundle package, into one command with the summed quantity.
+ * Only commands whose name has a configured rule are merged. Each rule names the position of the command's quantity
+ * argument, counting the command name as 0, so other numbers such as a data value in "give Notch 35 1 14" are never
+ * summed. Merged quantities never exceed the configured maximum. Used by the Dispatcher on the main thread only.
+ */
+public class Aggregator {
+
+  /**
+   * The position of the quantity argument by lowercased command name.
+   */
+  private final HashMap<String, Integer> positions = new HashMap<>();
+  /**
+   * The largest merged quantity.
+   */
+  private final long maxQuantity;
+  /**
+   * Open groups by player and command text without its quantity.
+   */
+  private final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+  /**
+   * Groups that reached the maximum quantity.
+   */
+  private final ArrayList<Group> full = new ArrayList<>();
+
+  /**
+   * Creates a new Aggregator using the aggregation settings from the passed config.
+   *
+   * @param config the plugin config.
+   */
+  public Aggregator(ConfigurationSection config) {
+    ConfigurationSection rules = config.getConfigurationSection("aggregation.commands");
+    if (config.getBoolean("aggregation.enabled", false)) {
+      if (rules != null) {
+        for (String name : rules.getKeys(false)) {
+          int position = rules.getInt(name, 0);
+          if (position > 0) {
+            positions.put(name.trim().toLowerCase(), position);
+          }
+          else {
+            CraftingStore.getLog().log("[WARNING] No quantity position for aggregated command " + name +
+                  "! Not merging it.");
+          }
+        }
+      }
+      else if (config.contains("aggregation.commands")) {
+        CraftingStore.getLog().log("[WARNING] aggregation.commands must map each command name to the position of " +
+              "its quantity! Not merging commands.");
+      }
+    }
+    this.maxQuantity = Math.max(1, config.getLong("aggregation.max-quantity", 64));
+  }
+
+  /**
+   * Adds the passed command to a group if it can be merged.
+   *
+   * @param command the command.
+   * @param text    the command text to dispatch.
+   * @return whether the command was taken into a group, and will be dispatched by flush.
+   */
+  public boolean add(Command command, String text) {
+    if (positions.isEmpty() || command.getMcName() == null) {
+      return false;
+    }
+    int end = text.indexOf(' ');
+    Integer position = end < 0 ? null : positions.get(text.substring(0, end).toLowerCase());
+    if (position == null) {
+      return false;
+    }
+    // Arguments are separated by single spaces, as Bukkit splits them.
+    int start = end;
+    for (int argument = 0; argument < position; argument++) {
+      if (end < 0) {
+        return false;
+      }
+      start = end + 1;
+      end = text.indexOf(' ', start);
+    }
+    if (end < 0) {
+      end = text.length();
+    }
+    long quantity = quantity(text, start, end);
+    if (quantity <= 0 || quantity > maxQuantity) {
+      return false;
+    }
+    String prefix = text.substring(0, start);
+    String suffix = text.substring(end);
+    String key = command.getMcName().toLowerCase() + '\n' + prefix + '\n' + suffix;
+    Group group = groups.get(key);
+    if (group != null && group.quantity + quantity > maxQuantity) {
+      full.add(group);
+      group = null;
+    }
+    if (group == null) {
+      group = new Group(prefix, suffix);
+      groups.put(key, group);
+    }
+    group.quantity += quantity;
+    group.commands.add(command);
+    return true;
+  }
+
+  /**
+   * Returns the number of groups waiting to be dispatched.
+   *
+   * @return the number of groups.
+   */
+  public int size() {
+    return groups.size() + full.size();
+  }
+
+  /**
+   * Passes each group's merged command text and commands to the consumer, then clears the groups.
+   *
+   * @param dispatch the consumer dispatching each group.
+   * @return the number of groups dispatched.
+   */
+  public int flush(BiConsumer<String, List<Command>> dispatch) {
+    int count = size();
+    for (Group group : full) {
+      dispatch.accept(group.prefix + group.quantity + group.suffix, group.commands);
+    }
+    for (Group group : groups.values()) {
+      dispatch.accept(group.prefix + group.quantity + group.suffix, group.commands);
+    }
+    full.clear();
+    groups.clear();
+    return count;
+  }
+
+  /**
+   * Parses the quantity between the passed positions.
+   *
+   * @return the quantity, or -1 if the text there is not a plain number.
+   */
+  private static long quantity(String text, int start, int end) {
+    int length = end - start;
+    if (length <= 0 || length > 18) {
+      return -1;
+    }
+    long quantity = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      quantity = quantity * 10 + (c - '0');
+    }
+    return quantity;
+  }
+
+  private static class Group {
+    private final String prefix;
+    private final String suffix;
+    private final ArrayList<Command> commands = new ArrayList<>();
+    private long quantity = 0;
+
+    private Group(String prefix, String suffix) {
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.thekdub.craftingstore;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The single pooled HTTP client used for all CraftingStore API requests.
+ * Tracks connection reuse, TLS handshakes and request latency.
+ */
+public class ApiClient {
+
+  /**
+   * The underlying OkHttp client.
+   */
+  private final OkHttpClient client;
+  /**
+   * The number of requests started.
+   */
+  private final AtomicLong requests = new AtomicLong();
+  /**
+   * The number of requests that failed before a response was read.
+   */
+  private final AtomicLong failures = new AtomicLong();
+  /**
+   * The number of connections acquired from the pool or newly opened.
+   */
+  private final AtomicLong acquired = new AtomicLong();
+  /**
+   * The number of new connections opened.
+   */
+  private final AtomicLong connects = new AtomicLong();
+  /**
+   * The number of completed TLS handshakes.
+   */
+  private final AtomicLong handshakes = new AtomicLong();
+
+  /**
+   * Creates a new ApiClient using the http settings from the passed config.
+   *
+   * @param config the plugin config.
+   */
+  public ApiClient(ConfigurationSection config) {
+    long timeout = config.getLong("http.timeout-seconds", 10);
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+          .connectionPool(new ConnectionPool(config.getInt("http.max-idle-connections", 5),
+                config.getLong("http.keep-alive-seconds", 300), TimeUnit.SECONDS))
+          .connectTimeout(timeout, TimeUnit.SECONDS)
+          .writeTimeout(timeout, TimeUnit.SECONDS)
+          .callTimeout(timeout, TimeUnit.SECONDS)
+          .readTimeout(timeout, TimeUnit.SECONDS)
+          .eventListenerFactory(call -> new Listener());
+    builder.protocols(config.getBoolean("http.http2", true) ?
+          Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1) : Collections.singletonList(Protocol.HTTP_1_1));
+    client = builder.build();
+  }
+
+  /**
+   * Returns the underlying OkHttp client.
+   *
+   * @return the OkHttp client.
+   */
+  public OkHttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * Evicts pooled connections and stops the client's dispatcher threads.
+   */
+  public void shutdown() {
+    client.connectionPool().evictAll();
+    client.dispatcher().executorService().shutdown();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  public long getConnects() {
+    return connects.get();
+  }
+
+  public long getReusedConnections() {
+    return Math.max(0, acquired.get() - connects.get());
+  }
+
+  public long getHandshakes() {
+    return handshakes.get();
+  }
+
+  /**
+   * Per-call listener feeding the client counters and the http_request_seconds timer.
+   */
+  private class Listener extends EventListener {
+
+    private long start;
+
+    @Override
+    public void callStart(Call call) {
+      start = System.nanoTime();
+      requests.incrementAndGet();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+      connects.incrementAndGet();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+      handshakes.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+      acquired.incrementAndGet();
+    }
+
+    @Override
+    public void callEnd(Call call) {
+      Metrics.time("http_request_seconds", start);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+      Metrics.time("http_request_seconds", start);
+      failures.incrementAndGet();
+    }
+  }
+}
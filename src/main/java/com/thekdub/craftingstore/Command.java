@@ -1,7 +1,6 @@
 package com.thekdub.craftingstore;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.Objects;
 
@@ -127,8 +126,7 @@ public class Command {
   @Override
   public String toString() {
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      return mapper.writeValueAsString(this);
+      return Json.WRITER.writeValueAsString(this);
     } catch (Exception e) {
       CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
     }
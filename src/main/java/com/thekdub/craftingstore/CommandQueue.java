@@ -1,7 +1,6 @@
 package com.thekdub.craftingstore;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.ArrayList;
 import java.util.Objects;
@@ -51,8 +50,7 @@ public class CommandQueue {
   @Override
   public String toString() {
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      return mapper.writeValueAsString(this);
+      return Json.WRITER.writeValueAsString(this);
     } catch (Exception e) {
       CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
     }
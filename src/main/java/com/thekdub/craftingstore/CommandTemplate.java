@@ -0,0 +1,209 @@
+package com.thekdub.craftingstore;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A command string compiled into literal text and placeholders.
+ * Each distinct command string is compiled once and cached, and expansion is a single append pass over the compiled
+ * segments into a reused builder, with no regular expressions.
+ * <p>
+ * Placeholders, filled from the Command:
+ * {player} - the in-game name.
+ * {uuid} - the player UUID.
+ * {package} - the package name.
+ * {price} - the package price, with two decimals.
+ * {coupon} - the coupon name, or nothing.
+ * {discount} - the coupon discount.
+ * {payment} - the payment ID.
+ * {id} - the command ID.
+ * Anything else in braces is left as it is.
+ */
+public class CommandTemplate {
+
+  /**
+   * The most templates kept in the cache before it is cleared.
+   */
+  private static final int CACHE_LIMIT = 4096;
+  /**
+   * Compiled templates by raw command string.
+   */
+  private static final ConcurrentHashMap<String, CommandTemplate> cache = new ConcurrentHashMap<>();
+  /**
+   * A builder reused by each thread expanding templates.
+   */
+  private static final ThreadLocal<StringBuilder> builder = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private enum Field {
+    PLAYER("player"),
+    UUID("uuid"),
+    PACKAGE("package"),
+    PRICE("price"),
+    COUPON("coupon"),
+    DISCOUNT("discount"),
+    PAYMENT("payment"),
+    ID("id");
+
+    private final String name;
+
+    Field(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * The raw command string.
+   */
+  private final String raw;
+  /**
+   * Literal text. literals[i] precedes fields[i], and the last literal follows the last field.
+   */
+  private final String[] literals;
+  /**
+   * Placeholders, in order.
+   */
+  private final Field[] fields;
+
+  private CommandTemplate(String raw, String[] literals, Field[] fields) {
+    this.raw = raw;
+    this.literals = literals;
+    this.fields = fields;
+  }
+
+  /**
+   * Expands the placeholders in the passed command's command string.
+   *
+   * @param command the command.
+   * @return the command string with its placeholders filled.
+   */
+  public static String expand(Command command) {
+    String raw = command.getCommand();
+    if (raw == null || raw.indexOf('{') < 0) {
+      return raw;
+    }
+    return compile(raw).apply(command);
+  }
+
+  /**
+   * Returns the compiled template for the passed command string, compiling and caching it if needed.
+   *
+   * @param raw the command string.
+   * @return the compiled template.
+   */
+  public static CommandTemplate compile(String raw) {
+    CommandTemplate template = cache.get(raw);
+    if (template == null) {
+      if (cache.size() >= CACHE_LIMIT) {
+        cache.clear();
+      }
+      template = cache.computeIfAbsent(raw, CommandTemplate::parse);
+    }
+    return template;
+  }
+
+  /**
+   * Fills this template's placeholders from the passed command.
+   *
+   * @param command the command.
+   * @return the expanded command string.
+   */
+  public String apply(Command command) {
+    if (fields.length == 0) {
+      return raw;
+    }
+    StringBuilder out = builder.get();
+    out.setLength(0);
+    for (int i = 0; i < fields.length; i++) {
+      out.append(literals[i]);
+      append(out, fields[i], command);
+    }
+    out.append(literals[fields.length]);
+    if (out.capacity() > 4096) {
+      builder.remove();
+    }
+    return out.toString();
+  }
+
+  private static void append(StringBuilder out, Field field, Command command) {
+    switch (field) {
+      case PLAYER:
+        appendNullable(out, command.getMcName());
+        break;
+      case UUID:
+        appendNullable(out, command.getUuid());
+        break;
+      case PACKAGE:
+        appendNullable(out, command.getPackageName());
+        break;
+      case PRICE:
+        long cents = command.getPackagePriceCents() != 0 ? command.getPackagePriceCents() :
+              Math.round(command.getPackagePrice() * 100);
+        if (cents < 0) {
+          out.append('-');
+          cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        if (cents % 100 < 10) {
+          out.append('0');
+        }
+        out.append(cents % 100);
+        break;
+      case COUPON:
+        appendNullable(out, command.getCouponName());
+        break;
+      case DISCOUNT:
+        out.append(command.getCouponDiscount());
+        break;
+      case PAYMENT:
+        appendNullable(out, command.getPaymentId());
+        break;
+      case ID:
+        out.append(command.getId());
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static void appendNullable(StringBuilder out, String value) {
+    if (value != null) {
+      out.append(value);
+    }
+  }
+
+  /**
+   * Splits the passed command string into literal text and known placeholders.
+   */
+  private static CommandTemplate parse(String raw) {
+    ArrayList<String> literals = new ArrayList<>();
+    ArrayList<Field> fields = new ArrayList<>();
+    int literalStart = 0;
+    int open = raw.indexOf('{');
+    while (open >= 0) {
+      int close = raw.indexOf('}', open + 1);
+      if (close < 0) {
+        break;
+      }
+      Field field = field(raw, open + 1, close);
+      if (field == null) {
+        open = raw.indexOf('{', open + 1);
+        continue;
+      }
+      literals.add(raw.substring(literalStart, open));
+      fields.add(field);
+      literalStart = close + 1;
+      open = raw.indexOf('{', literalStart);
+    }
+    literals.add(raw.substring(literalStart));
+    return new CommandTemplate(raw, literals.toArray(new String[0]), fields.toArray(new Field[0]));
+  }
+
+  private static Field field(String raw, int start, int end) {
+    for (Field field : Field.values()) {
+      if (field.name.length() == end - start && raw.regionMatches(true, start, field.name, 0, end - start)) {
+        return field;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,99 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decides which node dispatches each command when several servers share a store token.
+ * A node dispatches a command only after claiming its ID, and a claim is held by exactly one node at a time.
+ * Once the command is dispatched its claim is finished, and no node claims it again.
+ * Claims may block on shared storage, so they are never made on the main server thread.
+ */
+public interface Coordinator {
+
+  /**
+   * The outcome of a claim.
+   */
+  enum Claim {
+    /**
+     * This node holds the claim and may dispatch the command.
+     */
+    WON,
+    /**
+     * Another node holds the claim. It may lapse if that node stops renewing it, so the command must be seen again.
+     */
+    HELD,
+    /**
+     * The command was dispatched and no node claims it again.
+     */
+    FINISHED
+  }
+
+  /**
+   * A Coordinator for a single node, which may dispatch every command.
+   */
+  Coordinator NONE = new Coordinator() {
+    @Override
+    public Claim claim(int id) {
+      return Claim.WON;
+    }
+
+    @Override
+    public void finish(int[] ids) {}
+  };
+
+  /**
+   * Claims the passed command ID for this node, or renews this node's existing claim.
+   *
+   * @param id the command ID.
+   * @return WON if this node holds the claim and may dispatch the command, HELD if another node holds it, or
+   * FINISHED if it was finished.
+   * @throws IOException if the claim cannot be read or written, so whether this node holds it is unknown.
+   */
+  Claim claim(int id) throws IOException;
+
+  /**
+   * Marks the passed claimed IDs as dispatched, so no node claims them again, even once the lease has passed.
+   *
+   * @param ids the dispatched command IDs.
+   * @throws IOException if the claims cannot be written.
+   */
+  void finish(int[] ids) throws IOException;
+
+  /**
+   * Removes claims that can no longer matter.
+   */
+  default void expire() {}
+
+  /**
+   * Releases any resources held by the Coordinator.
+   */
+  default void close() {}
+
+  /**
+   * Creates the Coordinator configured in the passed config for the passed store.
+   *
+   * @param client the store.
+   * @param config the plugin config.
+   * @return the configured Coordinator, or NONE if coordination is disabled or cannot be started.
+   */
+  static Coordinator create(StoreClient client, ConfigurationSection config) {
+    String type = config.getString("coordination.type", "none").toLowerCase();
+    if (type.equals("file")) {
+      String directory = config.getString("coordination.directory", "");
+      if (directory.isEmpty()) {
+        CraftingStore.getLog().log("[ERROR] No coordination directory set! Dispatching without coordination.");
+        return NONE;
+      }
+      try {
+        return new FileLockCoordinator(new File(directory, client.getName()), client, config);
+      } catch (IOException e) {
+        CraftingStore.getLog().log("[ERROR] Could not open coordination directory! " + e.getMessage());
+        return NONE;
+      }
+    }
+    return NONE;
+  }
+}
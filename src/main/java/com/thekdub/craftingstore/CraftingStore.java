@@ -4,15 +4,39 @@ import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class CraftingStore extends JavaPlugin {
 
   private static CraftingStore instance = null;
 
   private static Logger log = null;
 
-  private static Watcher watcher = null;
+  private static final LinkedHashMap<String, StoreClient> stores = new LinkedHashMap<>();
+
+  private static final ArrayList<PollScheduler> pollers = new ArrayList<>();
+
+  private static final ArrayList<TransactionSync> syncs = new ArrayList<>();
+
+  private static final LinkedHashMap<String, TransactionStore> paymentStores = new LinkedHashMap<>();
+
+  private static final LinkedHashMap<String, SalesRollup> sales = new LinkedHashMap<>();
+
+  private static ScheduledExecutorService pollExecutor = null;
+
+  private static MetricsServer metricsServer = null;
 
   public static CraftingStore getInstance() {
     return instance;
@@ -22,6 +46,15 @@ public class CraftingStore extends JavaPlugin {
     return log;
   }
 
+  /**
+   * Sets the plugin log without enabling the plugin, so components can run outside a server, such as in tests.
+   *
+   * @param logger the log.
+   */
+  static void setLog(Logger logger) {
+    log = logger;
+  }
+
   public void onEnable() {
 
     instance = this;
@@ -31,23 +64,93 @@ public class CraftingStore extends JavaPlugin {
     log = new Logger();
     log.log("Loading plugin...");
 
-    if (getConfig().getString("token", "").length() == 0) {
+    loadStores();
+    if (stores.isEmpty()) {
       getLogger().warning("[CraftingStore] No token detected! Disabling plugin!");
       log.log("No token detected! Disabling plugin!");
       getPluginLoader().disablePlugin(this);
       return;
     }
 
-    watcher = new Watcher();
-
-    Bukkit.getScheduler().scheduleAsyncRepeatingTask(this, watcher, 20 * 30, 20 * 30);
+    APIHandler.init();
+    pollExecutor = Executors.newScheduledThreadPool(Math.max(1, getConfig().getInt("polling.threads", 4)),
+          runnable -> {
+            Thread thread = new Thread(runnable, "CraftingStore-Poll");
+            thread.setDaemon(true);
+            return thread;
+          });
+    ArrayList<Watcher> watchers = new ArrayList<>();
+    for (StoreClient client : stores.values()) {
+      Watcher watcher = new Watcher(client);
+      watchers.add(watcher);
+      PollScheduler poller = new PollScheduler(watcher, pollExecutor);
+      pollers.add(poller);
+      poller.start();
+      Bukkit.getScheduler().scheduleSyncRepeatingTask(this, watcher.getDispatcher(), 1, 1);
+      Bukkit.getScheduler().scheduleSyncRepeatingTask(this, watcher.getExpiries(), 20, 20);
+      if (getConfig().getBoolean("sync.enabled", false)) {
+        startSync(client);
+      }
+    }
+    Bukkit.getPluginManager().registerEvents(new PlayerListener(pollers), this);
+    long dumpInterval = getConfig().getLong("metrics.dump-interval", 0);
+    if (dumpInterval > 0) {
+      File dumpFile = new File(getDataFolder(), getConfig().getString("metrics.dump-file", "metrics.prom"));
+      Bukkit.getScheduler().scheduleAsyncRepeatingTask(this, () -> Metrics.dump(dumpFile), dumpInterval * 20,
+            dumpInterval * 20);
+    }
+    if (getConfig().getBoolean("metrics.http.enabled", false)) {
+      try {
+        metricsServer = new MetricsServer(watchers);
+        metricsServer.start();
+      } catch (IOException e) {
+        log.log("[ERROR] Could not start metrics listener! " + e.getMessage());
+      }
+    }
+    for (Player player : Bukkit.getOnlinePlayers()) {
+      PlayerListener.setOnline(player.getName(), true);
+      for (PollScheduler poller : pollers) {
+        poller.flushPending(player.getName());
+      }
+    }
 
     log.log("Plugin loaded!");
   }
 
   public void onDisable() {
-    watcher.save();
+    if (metricsServer != null) {
+      metricsServer.stop();
+      metricsServer = null;
+    }
+    pollers.forEach(PollScheduler::stop);
+    syncs.forEach(TransactionSync::shutdown);
+    if (pollExecutor != null) {
+      pollExecutor.shutdown();
+      try {
+        pollExecutor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      pollExecutor = null;
+    }
     Bukkit.getScheduler().cancelTasks(this);
+    for (PollScheduler poller : pollers) {
+      try {
+        poller.getWatcher().acknowledgeAll();
+      } catch (RuntimeException e) {
+        log.log("[ERROR] Could not acknowledge commands for " + poller.getWatcher().getClient().getName() + "! " + e);
+      }
+      poller.getWatcher().close();
+    }
+    pollers.clear();
+    syncs.clear();
+    paymentStores.values().forEach(TransactionStore::close);
+    paymentStores.clear();
+    sales.clear();
+    stores.clear();
+    PlayerListener.clearOnline();
+    APIHandler.shutdown();
+    Metrics.clearFunctions();
     log.log("Plugin unloaded!");
     log.close();
   }
@@ -61,6 +164,152 @@ public class CraftingStore extends JavaPlugin {
       sender.sendMessage(ChatColor.GOLD + "CraftingStore config reloaded successfully!");
       return true;
     }
+    if (command.getLabel().equalsIgnoreCase("csmetrics")) {
+      sender.sendMessage(ChatColor.GOLD + "CraftingStore metrics:");
+      for (String line : Metrics.summary()) {
+        sender.sendMessage(ChatColor.WHITE + line);
+      }
+      return true;
+    }
+    if (command.getLabel().equalsIgnoreCase("csstats")) {
+      if (sales.isEmpty()) {
+        sender.sendMessage(ChatColor.RED + "Payment sync is disabled!");
+        return true;
+      }
+      if (args.length > 0 && args[0].equalsIgnoreCase("player")) {
+        return playerStats(sender, args);
+      }
+      String period = args.length > 0 ? args[0].toLowerCase() : "today";
+      String name = args.length > 1 ? args[1] : sales.keySet().iterator().next();
+      SalesRollup rollup = sales.get(name);
+      if (rollup == null) {
+        sender.sendMessage(ChatColor.RED + "Unknown store! Stores: " + String.join(", ", sales.keySet()));
+        return true;
+      }
+      long from;
+      switch (period) {
+        case "today":
+          from = Time.startOfDay();
+          break;
+        case "week":
+          from = Time.startOfWeek();
+          break;
+        case "month":
+          from = Time.startOfMonth();
+          break;
+        case "year":
+          from = Time.startOfYear();
+          break;
+        default:
+          return false;
+      }
+      SalesRollup.Summary summary = rollup.summarize(from, Math.max(0, getConfig().getInt("stats.top", 5)));
+      sender.sendMessage(ChatColor.GOLD + "Sales (" + name + ", " + period + "): " + ChatColor.WHITE + summary.getCount() +
+            " payments, " + String.format("%.2f", summary.getSum()));
+      sender.sendMessage(ChatColor.GOLD + "Top packages: " + ChatColor.WHITE + ranking(summary.getTopPackages()));
+      sender.sendMessage(ChatColor.GOLD + "Top buyers: " + ChatColor.WHITE + ranking(summary.getTopBuyers()));
+      return true;
+    }
     return false;
   }
+
+  /**
+   * Creates a StoreClient for the top-level token, persisted in the plugin folder, and one for each entry in the
+   * stores section, persisted in stores/&lt;name&gt;.
+   */
+  private void loadStores() {
+    String token = getConfig().getString("token", "");
+    if (token.length() > 0) {
+      stores.put("default", new StoreClient("default", token, getDataFolder()));
+    }
+    ConfigurationSection section = getConfig().getConfigurationSection("stores");
+    if (section == null) {
+      return;
+    }
+    for (String name : section.getKeys(false)) {
+      String storeToken = section.getString(name + ".token", "");
+      if (storeToken.length() == 0) {
+        log.log("[WARNING] No token for store " + name + "! Skipping it.");
+        continue;
+      }
+      if (stores.containsKey(name)) {
+        log.log("[WARNING] Duplicate store " + name + "! Skipping it.");
+        continue;
+      }
+      File folder = new File(getDataFolder(), "stores" + File.separator + name);
+      stores.put(name, new StoreClient(name, storeToken, folder));
+    }
+  }
+
+  /**
+   * Starts payment sync for the passed store on the poll executor, feeding its payment store and sales rollups.
+   */
+  private void startSync(StoreClient client) {
+    TransactionSync sync = new TransactionSync(client, pollExecutor);
+    syncs.add(sync);
+    TransactionStore store = null;
+    try {
+      store = new TransactionStore(new File(client.getFolder(), "payments"),
+            SalesRollup.excludedStatuses(getConfig()));
+      paymentStores.put(client.getName(), store);
+      sync.addListener(store::append);
+    } catch (IOException e) {
+      log.log("[ERROR] Could not open payment store for " + client.getName() + "! " + e.getMessage());
+    }
+    SalesRollup rollup = new SalesRollup(new File(client.getFolder(), "sales.json"));
+    if (store != null) {
+      rollup.backfill(store);
+    }
+    sync.addListener(rollup::add);
+    sales.put(client.getName(), rollup);
+    long interval = Math.max(1, getConfig().getLong("sync.interval", 300));
+    pollExecutor.scheduleWithFixedDelay(() -> {
+      try {
+        sync.run();
+      } catch (RuntimeException e) {
+        log.log("[ERROR] Payment sync failed for " + client.getName() + "! " + e);
+      }
+    }, 10, interval, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Shows the lifetime payments of a player, by in-game name or UUID, from the payment store of a store.
+   */
+  private static boolean playerStats(CommandSender sender, String[] args) {
+    if (args.length < 2) {
+      return false;
+    }
+    if (paymentStores.isEmpty()) {
+      sender.sendMessage(ChatColor.RED + "No payment store is open!");
+      return true;
+    }
+    String name = args.length > 2 ? args[2] : paymentStores.keySet().iterator().next();
+    TransactionStore store = paymentStores.get(name);
+    if (store == null) {
+      sender.sendMessage(ChatColor.RED + "Unknown store! Stores: " + String.join(", ", paymentStores.keySet()));
+      return true;
+    }
+    String player = args[1];
+    // In-game names are at most 16 characters, so anything as long as a UUID is one.
+    boolean uuid = player.length() >= 32;
+    int count = uuid ? store.countByUuid(player) : store.countByPlayer(player);
+    double revenue = uuid ? store.revenueByUuid(player) : store.revenueByPlayer(player);
+    sender.sendMessage(ChatColor.GOLD + "Sales (" + name + ", " + player + "): " + ChatColor.WHITE + count +
+          " payments, " + String.format("%.2f", revenue));
+    return true;
+  }
+
+  private static String ranking(List<Map.Entry<String, Double>> entries) {
+    if (entries.isEmpty()) {
+      return "none";
+    }
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, Double> entry : entries) {
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder.append(entry.getKey()).append(" (").append(String.format("%.2f", entry.getValue())).append(")");
+    }
+    return builder.toString();
+  }
 }
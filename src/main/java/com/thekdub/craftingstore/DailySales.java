@@ -0,0 +1,117 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.HashMap;
+import java.util.Objects;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DailySales {
+  long day;
+  int count;
+  double sum;
+  int lastId;
+  HashMap<String, Double> packages = new HashMap<>();
+  HashMap<String, Double> buyers = new HashMap<>();
+
+  public DailySales() {}
+
+  public DailySales(long day) {
+    this.day = day;
+  }
+
+  public void add(Transaction transaction) {
+    count++;
+    sum += transaction.getPrice();
+    lastId = Math.max(lastId, transaction.getId());
+    if (transaction.getPackageName() != null) {
+      packages.merge(transaction.getPackageName(), transaction.getPrice(), Double::sum);
+    }
+    if (transaction.getInGameName() != null) {
+      buyers.merge(transaction.getInGameName(), transaction.getPrice(), Double::sum);
+    }
+  }
+
+  public long getDay() {
+    return day;
+  }
+
+  public void setDay(long day) {
+    this.day = day;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public void setCount(int count) {
+    this.count = count;
+  }
+
+  public double getSum() {
+    return sum;
+  }
+
+  public void setSum(double sum) {
+    this.sum = sum;
+  }
+
+  public int getLastId() {
+    return lastId;
+  }
+
+  public void setLastId(int lastId) {
+    this.lastId = lastId;
+  }
+
+  public HashMap<String, Double> getPackages() {
+    return packages;
+  }
+
+  public void setPackages(HashMap<String, Double> packages) {
+    this.packages = packages;
+  }
+
+  public HashMap<String, Double> getBuyers() {
+    return buyers;
+  }
+
+  public void setBuyers(HashMap<String, Double> buyers) {
+    this.buyers = buyers;
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return Json.WRITER.writeValueAsString(this);
+    } catch (Exception e) {
+      CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
+    }
+    return "DailySales{" +
+          "day=" + day +
+          ", count=" + count +
+          ", sum=" + sum +
+          ", lastId=" + lastId +
+          ", packages=" + packages +
+          ", buyers=" + buyers +
+          '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    DailySales that = (DailySales) o;
+    return day == that.day &&
+          count == that.count &&
+          Double.compare(that.sum, sum) == 0 &&
+          lastId == that.lastId &&
+          Objects.equals(packages, that.packages) &&
+          Objects.equals(buyers, that.buyers);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(day, count, sum, lastId, packages, buyers);
+  }
+}
@@ -0,0 +1,144 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A bounded queue of commands waiting for dispatch, ordered by package priority and then round-robin by player.
+ * Commands of a higher priority class are always taken first. Within a class each player with queued commands gets
+ * one command per turn, in the order the players first queued, so a player with a large backlog cannot hold up others.
+ * Each player's commands keep their submission order. Offer and poll are O(log c) for c priority classes.
+ */
+public class DeliveryQueue {
+
+  /**
+   * The most commands held at once.
+   */
+  private final int capacity;
+  /**
+   * The priority of packages without a configured priority.
+   */
+  private final int defaultPriority;
+  /**
+   * Configured priorities by lowercased package name.
+   */
+  private final HashMap<String, Integer> priorities = new HashMap<>();
+  /**
+   * Queued commands by priority class, highest priority first.
+   */
+  private final TreeMap<Integer, PriorityClass> classes = new TreeMap<>(Collections.reverseOrder());
+  private int size = 0;
+
+  /**
+   * Creates a new DeliveryQueue using the priority settings from the passed config.
+   *
+   * @param capacity the most commands held at once.
+   * @param config   the plugin config.
+   */
+  public DeliveryQueue(int capacity, ConfigurationSection config) {
+    this.capacity = capacity;
+    this.defaultPriority = config.getInt("priority.default", 0);
+    ConfigurationSection packages = config.getConfigurationSection("priority.packages");
+    if (packages != null) {
+      for (String name : packages.getKeys(false)) {
+        priorities.put(name.toLowerCase(), packages.getInt(name, defaultPriority));
+      }
+    }
+  }
+
+  /**
+   * Adds the passed command behind the same player's commands of the same priority.
+   *
+   * @param command the command.
+   * @return false if the queue is full and the command was not added.
+   */
+  public synchronized boolean offer(Command command) {
+    if (size >= capacity) {
+      return false;
+    }
+    classes.computeIfAbsent(priority(command), key -> new PriorityClass()).add(command);
+    size++;
+    return true;
+  }
+
+  /**
+   * Removes and returns the next command to dispatch.
+   *
+   * @return the next command, or null if the queue is empty.
+   */
+  public synchronized Command poll() {
+    Map.Entry<Integer, PriorityClass> first = classes.firstEntry();
+    if (first == null) {
+      return null;
+    }
+    Command command = first.getValue().poll();
+    if (first.getValue().isEmpty()) {
+      classes.remove(first.getKey());
+    }
+    size--;
+    return command;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Returns the priority of the passed command's package.
+   *
+   * @param command the command.
+   * @return the configured priority, or the default priority.
+   */
+  public int priority(Command command) {
+    if (priorities.isEmpty() || command.getPackageName() == null) {
+      return defaultPriority;
+    }
+    return priorities.getOrDefault(command.getPackageName().toLowerCase(), defaultPriority);
+  }
+
+  private static String key(Command command) {
+    return command.getMcName() == null ? "" : command.getMcName().toLowerCase();
+  }
+
+  /**
+   * The commands of one priority, with one lane per player.
+   */
+  private static class PriorityClass {
+    private final HashMap<String, ArrayDeque<Command>> lanes = new HashMap<>();
+    /**
+     * Lanes holding commands, in turn order.
+     */
+    private final ArrayDeque<ArrayDeque<Command>> turns = new ArrayDeque<>();
+
+    private void add(Command command) {
+      ArrayDeque<Command> lane = lanes.get(key(command));
+      if (lane == null) {
+        lane = new ArrayDeque<>();
+        lanes.put(key(command), lane);
+        turns.add(lane);
+      }
+      lane.add(command);
+    }
+
+    private Command poll() {
+      ArrayDeque<Command> lane = turns.poll();
+      Command command = lane.poll();
+      if (lane.isEmpty()) {
+        lanes.remove(key(command));
+      }
+      else {
+        turns.add(lane);
+      }
+      return command;
+    }
+
+    private boolean isEmpty() {
+      return turns.isEmpty();
+    }
+  }
+}
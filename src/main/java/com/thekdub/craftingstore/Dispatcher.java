@@ -0,0 +1,244 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Dispatches queued commands on the main server thread.
+ * The async Watcher submits commands, and this task drains them every tick within a time and count budget.
+ */
+public class Dispatcher implements Runnable {
+
+  /**
+   * The Watcher that owns the pending command set.
+   */
+  private final Watcher watcher;
+  /**
+   * Commands waiting to be dispatched on the main thread, in priority and player round-robin order.
+   */
+  private final DeliveryQueue queue;
+  /**
+   * IDs of commands that are queued or dispatched but not yet acknowledged.
+   */
+  private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+  /**
+   * IDs of dispatched commands waiting to be marked complete.
+   */
+  private final ConcurrentLinkedQueue<Integer> completed = new ConcurrentLinkedQueue<>();
+  /**
+   * IDs of commands that have already been dispatched.
+   */
+  private final Ledger ledger;
+  /**
+   * The maximum number of commands dispatched per tick.
+   */
+  private final int maxPerTick;
+  /**
+   * The maximum time spent dispatching per tick, in nanoseconds.
+   */
+  private final long tickBudgetNanos;
+  /**
+   * The metric names for dispatched commands, labelled with the store.
+   */
+  private final String dispatchedTotal;
+  private final String dispatchedPerTick;
+  private final String mergedTotal;
+  /**
+   * Merges bundle commands for the same player before they are dispatched.
+   */
+  private final Aggregator aggregator;
+
+  /**
+   * Creates a new Dispatcher using the dispatch limits from the passed config.
+   *
+   * @param watcher the Watcher that owns the pending command set.
+   * @param config  the plugin config.
+   */
+  public Dispatcher(Watcher watcher, ConfigurationSection config) {
+    this.watcher = watcher;
+    this.queue = new DeliveryQueue(Math.max(1, config.getInt("dispatch.queue-capacity", 5000)), config);
+    this.aggregator = new Aggregator(config);
+    this.maxPerTick = Math.max(1, config.getInt("dispatch.max-per-tick", 20));
+    this.tickBudgetNanos = Math.max(0, config.getLong("dispatch.tick-budget-nanos", 5000000L));
+    this.dispatchedTotal = watcher.getClient().metric("commands_dispatched_total");
+    this.dispatchedPerTick = watcher.getClient().metric("commands_dispatched_per_tick");
+    this.mergedTotal = watcher.getClient().metric("commands_merged_total");
+    this.ledger = new Ledger(new File(watcher.getClient().getFolder(), "ledger.dat"),
+          Math.max(1, config.getLong("ledger.retention-hours", 168)) * 3600000L);
+    this.ledger.load();
+  }
+
+  /**
+   * Queues a command for dispatch on the main thread.
+   * Commands that are already queued or awaiting acknowledgement are ignored.
+   * Commands that were already dispatched are queued for acknowledgement instead.
+   *
+   * @param command the command to queue.
+   * @return false if the queue is full and the command was not accepted.
+   */
+  public boolean submit(Command command) {
+    if (ledger.contains(command.getId())) {
+      restoreCompleted(command.getId());
+      return true;
+    }
+    if (!inFlight.add(command.getId())) {
+      return true;
+    }
+    if (!queue.offer(command)) {
+      inFlight.remove(command.getId());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Dispatches queued commands until the queue is empty or the tick budget is spent.
+   * Commands whose player must be online but is not are handed back to the Watcher as pending.
+   */
+  @Override
+  public void run() {
+    long deadline = System.nanoTime() + tickBudgetNanos;
+    int dispatched = 0;
+    Command command;
+    while (dispatched + aggregator.size() < maxPerTick && (command = queue.poll()) != null) {
+      if (isReady(command)) {
+        if (!ledger.add(command.getId(), System.currentTimeMillis())) {
+          completed.add(command.getId());
+        }
+        else {
+          String text = watcher.getExpiries().prepare(command, CommandTemplate.expand(command));
+          if (!aggregator.add(command, text)) {
+            dispatch(text, Collections.singletonList(command));
+            dispatched++;
+          }
+        }
+      }
+      else {
+        inFlight.remove(command.getId());
+        if (watcher.addPending(command)) {
+          CraftingStore.getLog().log("[PENDING] " + command);
+        }
+      }
+      if (System.nanoTime() - deadline >= 0) {
+        break;
+      }
+    }
+    dispatched += aggregator.flush(this::dispatch);
+    if (dispatched > 0) {
+      watcher.persistDispatched();
+      Metrics.add(dispatchedTotal, dispatched);
+      Metrics.histogram(dispatchedPerTick).record(dispatched);
+    }
+  }
+
+  /**
+   * Dispatches the passed command text once on behalf of the passed commands, which are each recorded as dispatched.
+   * The Watcher queues them for acknowledgement once their dispatch records are on disk.
+   */
+  private void dispatch(String text, List<Command> commands) {
+    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), text);
+    if (commands.size() == 1) {
+      CraftingStore.getLog().log("[PROCESSED] " + commands.get(0));
+    }
+    else {
+      StringBuilder ids = new StringBuilder();
+      for (Command command : commands) {
+        ids.append(ids.length() == 0 ? "" : ",").append(command.getId());
+      }
+      CraftingStore.getLog().log("[PROCESSED] " + text + " (merged " + commands.size() + " commands: " + ids + ")");
+      Metrics.add(mergedTotal, commands.size() - 1);
+    }
+    for (Command command : commands) {
+      watcher.markDispatched(command);
+    }
+  }
+
+  /**
+   * Determines whether the passed command can be dispatched now.
+   * Commands that require their player online wait until that player joins.
+   *
+   * @param command the command in question.
+   * @return whether the command can be dispatched now.
+   */
+  public static boolean isReady(Command command) {
+    return command.getMcName() == null || !command.isRequireOnline() || Bukkit.getPlayer(command.getMcName()) != null;
+  }
+
+  /**
+   * Removes and returns the IDs of all commands dispatched since the last call.
+   *
+   * @return the IDs of dispatched commands awaiting acknowledgement.
+   */
+  public int[] drainCompleted() {
+    ArrayList<Integer> ids = new ArrayList<>();
+    Integer id;
+    while ((id = completed.poll()) != null) {
+      ids.add(id);
+    }
+    int[] out = new int[ids.size()];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = ids.get(i);
+    }
+    return out;
+  }
+
+  /**
+   * Queues the passed dispatched IDs for acknowledgement. Called once their dispatch records are on disk.
+   *
+   * @param ids the dispatched command IDs.
+   */
+  public void complete(Collection<Integer> ids) {
+    completed.addAll(ids);
+  }
+
+  /**
+   * Queues the passed ID for acknowledgement without dispatching it again.
+   * Used for commands recovered as dispatched but never acknowledged.
+   *
+   * @param id the dispatched command ID.
+   */
+  public void restoreCompleted(int id) {
+    ledger.add(id, System.currentTimeMillis());
+    if (inFlight.add(id)) {
+      completed.add(id);
+    }
+  }
+
+  /**
+   * Releases the passed IDs once they have been acknowledged.
+   *
+   * @param ids the acknowledged command IDs.
+   */
+  public void release(int[] ids) {
+    for (int id : ids) {
+      inFlight.remove(id);
+    }
+  }
+
+  /**
+   * Returns the ledger of dispatched command IDs.
+   *
+   * @return the dispatch ledger.
+   */
+  public Ledger getLedger() {
+    return ledger;
+  }
+
+  /**
+   * Returns the number of commands waiting to be dispatched.
+   *
+   * @return the dispatch queue size.
+   */
+  public int size() {
+    return queue.size();
+  }
+}
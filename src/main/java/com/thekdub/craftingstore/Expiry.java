@@ -0,0 +1,85 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Objects;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Expiry {
+  int id;
+  String mcName;
+  String command;
+  long expires;
+
+  public Expiry() {}
+
+  public Expiry(int id, String mcName, String command, long expires) {
+    this.id = id;
+    this.mcName = mcName;
+    this.command = command;
+    this.expires = expires;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+  }
+
+  public String getMcName() {
+    return mcName;
+  }
+
+  public void setMcName(String mcName) {
+    this.mcName = mcName;
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  public void setCommand(String command) {
+    this.command = command;
+  }
+
+  public long getExpires() {
+    return expires;
+  }
+
+  public void setExpires(long expires) {
+    this.expires = expires;
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return Json.WRITER.writeValueAsString(this);
+    } catch (Exception e) {
+      CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
+    }
+    return "Expiry{" +
+          "id=" + id +
+          ", mcName='" + mcName + '\'' +
+          ", command='" + command + '\'' +
+          ", expires=" + expires +
+          '}';
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Expiry expiry = (Expiry) o;
+    return id == expiry.id &&
+          expires == expiry.expires &&
+          Objects.equals(mcName, expiry.mcName) &&
+          Objects.equals(command, expiry.command);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, mcName, command, expires);
+  }
+}
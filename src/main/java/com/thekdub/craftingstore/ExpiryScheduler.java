@@ -0,0 +1,187 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * Schedules revoke commands for time-limited packages.
+ * A package command may end with the expiry marker, a duration and a revoke command, for example
+ * "pex user Notch group add vip @expire 30d pex user Notch group remove vip". The part before the marker is
+ * dispatched as usual and the revoke command is dispatched once the duration has passed.
+ * Waiting revokes are held in a TimingWheel ticked once per second and persisted to expiries.json.
+ */
+public class ExpiryScheduler implements Runnable {
+
+  /**
+   * The file waiting revokes are persisted to.
+   */
+  private final File file;
+  /**
+   * The marker separating a package command from its expiry.
+   */
+  private final String marker;
+  /**
+   * Waiting revokes, in seconds.
+   */
+  private final TimingWheel<Expiry> wheel = new TimingWheel<>(System.currentTimeMillis() / 1000L);
+  /**
+   * Whether the waiting revokes changed since they were last saved.
+   */
+  private boolean dirty = false;
+
+  /**
+   * Creates a new ExpiryScheduler using the expiry marker from the passed config.
+   *
+   * @param folder the folder waiting revokes are persisted in.
+   * @param config the plugin config.
+   */
+  public ExpiryScheduler(File folder, ConfigurationSection config) {
+    this.file = new File(folder, "expiries.json");
+    this.marker = config.getString("expiry.marker", " @expire ");
+  }
+
+  /**
+   * Splits the expiry off the passed command text and schedules its revoke command.
+   *
+   * @param command the command being dispatched.
+   * @param text    the command text, with placeholders expanded.
+   * @return the command text to dispatch now.
+   */
+  public String prepare(Command command, String text) {
+    int mark = marker.isEmpty() ? -1 : text.indexOf(marker);
+    if (mark < 0) {
+      return text;
+    }
+    int start = mark + marker.length();
+    int end = text.indexOf(' ', start);
+    long duration = -1;
+    try {
+      duration = end < 0 ? -1 : Time.parseTimeStr(text, start, end);
+    } catch (NumberFormatException ignored) {}
+    String revoke = end < 0 ? "" : text.substring(end + 1).trim();
+    if (duration <= 0 || revoke.isEmpty()) {
+      CraftingStore.getLog().log("[ERROR] Invalid expiry, dispatching without it! " + command);
+      return text.substring(0, mark);
+    }
+    schedule(new Expiry(command.getId(), command.getMcName(), revoke, System.currentTimeMillis() + duration));
+    return text.substring(0, mark);
+  }
+
+  /**
+   * Schedules the passed revoke.
+   *
+   * @param expiry the revoke to schedule.
+   */
+  public synchronized void schedule(Expiry expiry) {
+    wheel.add(tick(expiry.getExpires()), expiry);
+    dirty = true;
+    CraftingStore.getLog().log("[SCHEDULED] Expires in " +
+          Time.millisToShortReadable(expiry.getExpires() - System.currentTimeMillis()) + " " + expiry);
+  }
+
+  /**
+   * Dispatches every revoke that has come due, then saves the remaining revokes so they are not run again after a
+   * restart.
+   */
+  @Override
+  public void run() {
+    ArrayList<Expiry> due = new ArrayList<>();
+    synchronized (this) {
+      wheel.advance(System.currentTimeMillis() / 1000L, due::add);
+      if (!due.isEmpty()) {
+        dirty = true;
+      }
+    }
+    for (Expiry expiry : due) {
+      Bukkit.dispatchCommand(Bukkit.getConsoleSender(), expiry.getCommand());
+      CraftingStore.getLog().log("[EXPIRED] " + expiry);
+    }
+    if (!due.isEmpty()) {
+      save();
+    }
+  }
+
+  /**
+   * Returns the number of waiting revokes.
+   *
+   * @return the number of waiting revokes.
+   */
+  public synchronized int size() {
+    return wheel.size();
+  }
+
+  /**
+   * Loads waiting revokes from disk. Revokes that came due while the server was down run on the next tick.
+   */
+  public synchronized void load() {
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        try {
+          Expiry expiry = Json.EXPIRY.readValue(line);
+          wheel.add(tick(expiry.getExpires()), expiry);
+        } catch (IOException e) {
+          CraftingStore.getLog().log("[ERROR] Could not map from JSON! " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not load expiries! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes waiting revokes to disk if they changed since the last save.
+   */
+  public void save() {
+    ArrayList<Expiry> expiries = new ArrayList<>();
+    synchronized (this) {
+      if (!dirty) {
+        return;
+      }
+      dirty = false;
+      wheel.forEach((due, expiry) -> expiries.add(expiry));
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp);
+         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      for (Expiry expiry : expiries) {
+        writer.write(Json.WRITER.writeValueAsString(expiry));
+        writer.write('\n');
+      }
+      writer.flush();
+      stream.getFD().sync();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save expiries! " + e.getMessage());
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save expiries! " + e.getMessage());
+    }
+  }
+
+  private static long tick(long millis) {
+    return (millis + 999L) / 1000L;
+  }
+}
@@ -0,0 +1,227 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * A Coordinator using lease files in a directory shared by every node, such as a network mount.
+ * Each claim is a file named after the command ID holding the owning node, the lease time and whether the command
+ * was dispatched. Claims are read and written while holding an exclusive lock on the directory's lock file.
+ * A node renews its claim every time it sees the command, and another node may take the claim over once the lease
+ * has gone unrenewed, such as after the owning node crashed. A dispatched claim is never taken over.
+ */
+public class FileLockCoordinator implements Coordinator {
+
+  /**
+   * The shared claim directory.
+   */
+  private final File directory;
+  /**
+   * The channel of the lock file guarding the directory.
+   */
+  private final FileChannel lockChannel;
+  /**
+   * This node's ID.
+   */
+  private final String node;
+  /**
+   * How long a claim is held without being renewed, in milliseconds.
+   */
+  private final long lease;
+  /**
+   * How long dispatched claims are kept, in milliseconds.
+   */
+  private final long retention;
+  private final String wonMetric;
+  private final String lostMetric;
+  private final String failedMetric;
+  /**
+   * The time claims were last expired, in milliseconds.
+   */
+  private long lastExpire = 0;
+
+  /**
+   * Creates a new FileLockCoordinator using the coordination settings from the passed config.
+   *
+   * @param directory the shared claim directory.
+   * @param client    the store whose commands are claimed.
+   * @param config    the plugin config.
+   * @throws IOException if the lock file cannot be opened.
+   */
+  public FileLockCoordinator(File directory, StoreClient client, ConfigurationSection config) throws IOException {
+    this.directory = directory;
+    this.directory.mkdirs();
+    this.lockChannel = FileChannel.open(new File(directory, ".lock").toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE);
+    this.node = nodeId(config.getString("coordination.node-id", ""));
+    // Dispatched claims are finished on the next poll, so the lease must outlast the longest poll interval.
+    this.lease = Math.max(Math.max(1, config.getLong("coordination.lease-seconds", 300)),
+          config.getLong("polling.max-interval", 120) * 2) * 1000L;
+    this.retention = Math.max(1, config.getLong("ledger.retention-hours", 168)) * 3600000L;
+    this.wonMetric = client.metric("coordination_claims_total{result=\"won\"}");
+    this.lostMetric = client.metric("coordination_claims_total{result=\"lost\"}");
+    this.failedMetric = client.metric("coordination_claims_total{result=\"failed\"}");
+    expire();
+  }
+
+  @Override
+  public synchronized Claim claim(int id) throws IOException {
+    File file = new File(directory, id + ".claim");
+    long now = System.currentTimeMillis();
+    try {
+      FileLock lock = lock();
+      try {
+        Lease current = read(file);
+        if (current != null && (current.done || (!current.node.equals(node) && now - current.time < lease))) {
+          Metrics.increment(lostMetric);
+          return current.done ? Claim.FINISHED : Claim.HELD;
+        }
+        write(file, new Lease(node, now, false));
+        Metrics.increment(wonMetric);
+        return Claim.WON;
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      Metrics.increment(failedMetric);
+      throw e;
+    }
+  }
+
+  @Override
+  public synchronized void finish(int[] ids) throws IOException {
+    long now = System.currentTimeMillis();
+    FileLock lock = lock();
+    try {
+      for (int id : ids) {
+        write(new File(directory, id + ".claim"), new Lease(node, now, true));
+      }
+    } finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Deletes lapsed claims and dispatched claims older than the ledger retention.
+   * Runs at most once per lease.
+   */
+  @Override
+  public synchronized void expire() {
+    long now = System.currentTimeMillis();
+    if (now - lastExpire < lease) {
+      return;
+    }
+    lastExpire = now;
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".claim"));
+    if (files == null) {
+      return;
+    }
+    try {
+      FileLock lock = lock();
+      try {
+        for (File file : files) {
+          Lease current = read(file);
+          if (current == null || now - current.time >= (current.done ? retention : lease)) {
+            file.delete();
+          }
+        }
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not expire claims! " + e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      lockChannel.close();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not close coordination lock! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Locks the directory's lock file, waiting for other processes to release it.
+   * A lock held by another coordinator in this process cannot be waited for and fails like any other I/O error.
+   */
+  private FileLock lock() throws IOException {
+    try {
+      return lockChannel.lock();
+    } catch (OverlappingFileLockException e) {
+      throw new IOException("The coordination lock is held by another coordinator in this process!", e);
+    }
+  }
+
+  /**
+   * Returns the configured node ID, or a random ID persisted in the plugin folder if none is configured.
+   */
+  private static String nodeId(String configured) {
+    if (!configured.trim().isEmpty()) {
+      return configured.trim().replace(' ', '_');
+    }
+    File file = new File(CraftingStore.getInstance().getDataFolder(), "node.id");
+    try {
+      if (file.exists()) {
+        String id = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        if (!id.isEmpty()) {
+          return id;
+        }
+      }
+      String id = UUID.randomUUID().toString();
+      Files.write(file.toPath(), id.getBytes(StandardCharsets.UTF_8));
+      return id;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not persist node ID! " + e.getMessage());
+      return UUID.randomUUID().toString();
+    }
+  }
+
+  private static Lease read(File file) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    String[] parts = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+    if (parts.length < 3) {
+      return null;
+    }
+    try {
+      return new Lease(parts[0], Long.parseLong(parts[1]), parts[2].equals("done"));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static void write(File file, Lease lease) throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    Files.write(temp.toPath(), (lease.node + " " + lease.time + " " + (lease.done ? "done" : "held"))
+          .getBytes(StandardCharsets.UTF_8));
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * The contents of a claim file.
+   */
+  private static class Lease {
+    private final String node;
+    private final long time;
+    private final boolean done;
+
+    private Lease(String node, long time, boolean done) {
+      this.node = node;
+      this.time = time;
+      this.done = done;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.thekdub.craftingstore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free log-linear histogram of non-negative long values.
+ * Each power of two is split into eight linear sub-buckets, so any recorded value is reported within 12.5% of its
+ * true value across the whole long range using a fixed 488 buckets.
+ */
+public class Histogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  /**
+   * Recorded value counts by bucket.
+   */
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  /**
+   * The number of recorded values.
+   */
+  private final LongAdder count = new LongAdder();
+  /**
+   * The sum of recorded values.
+   */
+  private final LongAdder sum = new LongAdder();
+  /**
+   * The largest recorded value.
+   */
+  private final AtomicLong max = new AtomicLong();
+  /**
+   * The number of recorded units per reported unit, such as 1e9 for nanoseconds reported as seconds.
+   */
+  private final double scale;
+
+  /**
+   * Creates a new Histogram.
+   *
+   * @param scale the number of recorded units per reported unit.
+   */
+  public Histogram(double scale) {
+    this.scale = scale;
+  }
+
+  /**
+   * Records the passed value. Negative values are recorded as 0.
+   *
+   * @param value the value to record.
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return the number of recorded values.
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the sum of recorded values, in reported units.
+   *
+   * @return the scaled sum.
+   */
+  public double getSum() {
+    return sum.sum() / scale;
+  }
+
+  /**
+   * Returns the largest recorded value, in reported units.
+   *
+   * @return the scaled maximum.
+   */
+  public double getMax() {
+    return max.get() / scale;
+  }
+
+  /**
+   * Returns the value at the passed quantile, in reported units.
+   *
+   * @param quantile the quantile, from 0 to 1.
+   * @return the scaled value at the quantile, or 0 if nothing was recorded.
+   */
+  public double getQuantile(double quantile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(upper(i), max.get()) / scale;
+      }
+    }
+    return max.get() / scale;
+  }
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * Returns the largest value held by the passed bucket.
+   */
+  private static long upper(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+    long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    return lower + (1L << (exponent - SUB_BITS)) - 1;
+  }
+}
@@ -0,0 +1,354 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An append-only journal of pending, dispatched and acknowledged commands.
+ * Each event is appended as one line, fsynced in batches, and periodically compacted into a snapshot.
+ * On startup the snapshot and journal are replayed to recover state after a crash.
+ * <p>
+ * Record format, one per line:
+ * P &lt;command json&gt; - the command is waiting for its player.
+ * D &lt;id&gt; - the command was dispatched and is no longer pending.
+ * A &lt;id&gt; - the dispatched command was acknowledged.
+ * X &lt;id&gt; - the pending command was dropped without being dispatched.
+ */
+public class Journal {
+
+  /**
+   * The append-only journal file.
+   */
+  private final File journalFile;
+  /**
+   * The compacted snapshot file.
+   */
+  private final File snapshotFile;
+  /**
+   * The number of journal records after which the journal is compacted.
+   */
+  private final int compactAfter;
+  /**
+   * Pending commands by ID.
+   */
+  private final LinkedHashMap<Integer, Command> pending = new LinkedHashMap<>();
+  /**
+   * IDs of dispatched commands that have not been acknowledged.
+   */
+  private final LinkedHashSet<Integer> unacked = new LinkedHashSet<>();
+  private FileOutputStream out;
+  private BufferedWriter writer;
+  /**
+   * The number of records in the current journal file.
+   */
+  private int records = 0;
+  /**
+   * Whether records were appended since the last sync.
+   */
+  private boolean dirty = false;
+
+  /**
+   * Creates a new Journal in the passed folder.
+   *
+   * @param folder       the folder holding the journal and snapshot files.
+   * @param compactAfter the number of journal records after which the journal is compacted.
+   */
+  public Journal(File folder, int compactAfter) {
+    this.journalFile = new File(folder, "pending.journal");
+    this.snapshotFile = new File(folder, "pending.snapshot");
+    this.compactAfter = Math.max(1, compactAfter);
+  }
+
+  /**
+   * Returns whether neither a snapshot nor a journal exists yet.
+   *
+   * @return whether this journal has no files on disk.
+   */
+  public boolean isNew() {
+    return !journalFile.exists() && !snapshotFile.exists();
+  }
+
+  /**
+   * Replays the snapshot and journal, then opens the journal for appending.
+   *
+   * @throws IOException if the journal cannot be opened.
+   */
+  public synchronized void recover() throws IOException {
+    replay(snapshotFile);
+    replay(journalFile);
+    open(true);
+  }
+
+  /**
+   * Records that the passed command is waiting for its player.
+   *
+   * @param command the pending command.
+   */
+  public synchronized void pending(Command command) {
+    try {
+      String json = Json.WRITER.writeValueAsString(command);
+      pending.put(command.getId(), command);
+      append("P " + json);
+    } catch (JsonProcessingException e) {
+      CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Records that the passed command was dispatched.
+   *
+   * @param id the dispatched command ID.
+   */
+  public synchronized void dispatched(int id) {
+    pending.remove(id);
+    unacked.add(id);
+    append("D " + id);
+  }
+
+  /**
+   * Records that the passed pending command was dropped without being dispatched.
+   *
+   * @param id the dropped command ID.
+   */
+  public synchronized void dropped(int id) {
+    if (pending.remove(id) != null) {
+      append("X " + id);
+    }
+  }
+
+  /**
+   * Records that the passed commands were acknowledged.
+   *
+   * @param ids the acknowledged command IDs.
+   */
+  public synchronized void acknowledged(int[] ids) {
+    for (int id : ids) {
+      if (unacked.remove(id)) {
+        append("A " + id);
+      }
+    }
+  }
+
+  /**
+   * Returns the recovered pending commands.
+   *
+   * @return a copy of the pending commands.
+   */
+  public synchronized Collection<Command> getPending() {
+    return new ArrayList<>(pending.values());
+  }
+
+  /**
+   * Returns the IDs of dispatched commands that were never acknowledged.
+   *
+   * @return a copy of the unacknowledged IDs.
+   */
+  public synchronized Set<Integer> getUnacked() {
+    return new LinkedHashSet<>(unacked);
+  }
+
+  /**
+   * Flushes buffered records and forces them to disk.
+   * Compacts the journal once it holds more than the configured number of records.
+   */
+  public void sync() {
+    synchronized (this) {
+      if (writer != null && dirty && records >= compactAfter) {
+        compact();
+      }
+    }
+    // A new journal after compaction has nothing to force, but one kept by a failed compaction does.
+    force();
+  }
+
+  /**
+   * Flushes buffered records and forces them to disk without compacting.
+   */
+  public void force() {
+    FileOutputStream stream;
+    synchronized (this) {
+      if (writer == null || !dirty) {
+        return;
+      }
+      dirty = false;
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        CraftingStore.getLog().log("[ERROR] Could not write journal! " + e.getMessage());
+        return;
+      }
+      stream = out;
+    }
+    try {
+      stream.getFD().sync();
+    } catch (IOException e) {
+      synchronized (this) {
+        if (stream != out) {
+          return;
+        }
+      }
+      CraftingStore.getLog().log("[ERROR] Could not sync journal! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the current state to the snapshot and starts a new, empty journal.
+   */
+  public synchronized void compact() {
+    File temp = new File(snapshotFile.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp);
+         BufferedWriter snapshot = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      for (Command command : pending.values()) {
+        snapshot.write("P " + Json.WRITER.writeValueAsString(command) + "\n");
+      }
+      for (int id : unacked) {
+        snapshot.write("D " + id + "\n");
+      }
+      snapshot.flush();
+      stream.getFD().sync();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not write journal snapshot! " + e.getMessage());
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // The journal stays open and complete, so records keep being appended and compaction is retried later.
+      CraftingStore.getLog().log("[ERROR] Could not compact journal! " + e.getMessage());
+      return;
+    }
+    close();
+    try {
+      open(false);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not start new journal! " + e.getMessage());
+      try {
+        // Replaying the old journal over the new snapshot yields the same state, so appending to it is safe.
+        open(true);
+      } catch (IOException retry) {
+        CraftingStore.getLog().log("[ERROR] Could not reopen journal! Records are lost until restart. " +
+              retry.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Syncs and closes the journal file.
+   */
+  public synchronized void close() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.flush();
+      out.getFD().sync();
+      writer.close();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not close journal! " + e.getMessage());
+    }
+    writer = null;
+    out = null;
+  }
+
+  private void open(boolean append) throws IOException {
+    journalFile.getParentFile().mkdirs();
+    boolean torn = append && isTorn();
+    out = new FileOutputStream(journalFile, append);
+    writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    if (torn) {
+      writer.write('\n');
+    }
+    if (!append) {
+      records = 0;
+      dirty = false;
+    }
+  }
+
+  /**
+   * Returns whether the journal ends in a partial record, so new records start on a line of their own.
+   */
+  private boolean isTorn() throws IOException {
+    if (journalFile.length() == 0) {
+      return false;
+    }
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+      file.seek(file.length() - 1);
+      return file.read() != '\n';
+    }
+  }
+
+  private void append(String record) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write(record);
+      writer.write('\n');
+      records++;
+      dirty = true;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not write journal! " + e.getMessage());
+    }
+  }
+
+  private void replay(File file) {
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (file == journalFile) {
+          records++;
+        }
+        if (line.length() < 3) {
+          continue;
+        }
+        try {
+          String value = line.substring(2);
+          switch (line.charAt(0)) {
+            case 'P':
+              Command command = Json.COMMAND.readValue(value);
+              pending.put(command.getId(), command);
+              break;
+            case 'D':
+              pending.remove(Integer.parseInt(value));
+              unacked.add(Integer.parseInt(value));
+              break;
+            case 'A':
+              unacked.remove(Integer.parseInt(value));
+              break;
+            case 'X':
+              pending.remove(Integer.parseInt(value));
+              break;
+            default:
+              break;
+          }
+        } catch (IOException | NumberFormatException e) {
+          CraftingStore.getLog().log("[ERROR] Skipping damaged journal record! " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not read journal! " + e.getMessage());
+    }
+  }
+}
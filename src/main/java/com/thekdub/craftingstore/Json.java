@@ -0,0 +1,47 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Shared JSON readers and writers for CraftingStore.
+ * ObjectReader and ObjectWriter are immutable and thread-safe, so each model type is introspected only once.
+ */
+public class Json {
+
+  /**
+   * The shared ObjectMapper all readers and writers are derived from.
+   */
+  public static final ObjectMapper MAPPER = new ObjectMapper();
+  /**
+   * Reader for /v4/queue responses.
+   */
+  public static final ObjectReader COMMAND_QUEUE = MAPPER.readerFor(CommandQueue.class);
+  /**
+   * Reader for /v7/payments responses.
+   */
+  public static final ObjectReader TRANSACTION_LIST = MAPPER.readerFor(TransactionList.class);
+  /**
+   * Reader for individual payments.
+   */
+  public static final ObjectReader TRANSACTION = MAPPER.readerFor(Transaction.class);
+  /**
+   * Reader for individual commands.
+   */
+  public static final ObjectReader COMMAND = MAPPER.readerFor(Command.class);
+  /**
+   * Reader for scheduled expiries.
+   */
+  public static final ObjectReader EXPIRY = MAPPER.readerFor(Expiry.class);
+  /**
+   * Reader for daily sales rollups.
+   */
+  public static final ObjectReader DAILY_SALES = MAPPER.readerFor(DailySales.class);
+  /**
+   * Writer shared by all model types.
+   */
+  public static final ObjectWriter WRITER = MAPPER.writer();
+
+  private Json() {}
+}
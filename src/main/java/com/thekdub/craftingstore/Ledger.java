@@ -0,0 +1,219 @@
+package com.thekdub.craftingstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A ledger of dispatched command IDs, used to guarantee each command is dispatched at most once.
+ * IDs are kept in a primitive open-addressing hash table with their dispatch time, expire after a retention window,
+ * and are persisted across restarts.
+ */
+public class Ledger {
+
+  /**
+   * The file the ledger is persisted to.
+   */
+  private final File file;
+  /**
+   * How long dispatched IDs are remembered, in milliseconds.
+   */
+  private final long retention;
+  /**
+   * Dispatched command IDs, indexed by hash slot.
+   */
+  private int[] ids = new int[64];
+  /**
+   * Dispatch times in milliseconds, indexed by hash slot. 0 marks an empty slot.
+   */
+  private long[] times = new long[64];
+  /**
+   * The number of IDs in the ledger.
+   */
+  private int size = 0;
+  /**
+   * Whether the ledger changed since it was last saved.
+   */
+  private boolean dirty = false;
+
+  /**
+   * Creates a new Ledger persisted to the passed file.
+   *
+   * @param file      the file the ledger is persisted to.
+   * @param retention how long dispatched IDs are remembered, in milliseconds.
+   */
+  public Ledger(File file, long retention) {
+    this.file = file;
+    this.retention = retention;
+  }
+
+  /**
+   * Returns whether the passed command ID has been dispatched.
+   *
+   * @param id the command ID.
+   * @return whether the ID is in the ledger.
+   */
+  public synchronized boolean contains(int id) {
+    int mask = ids.length - 1;
+    for (int i = slot(id, mask); times[i] != 0; i = (i + 1) & mask) {
+      if (ids[i] == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records the passed command ID as dispatched at the passed time.
+   *
+   * @param id   the command ID.
+   * @param time the dispatch time in milliseconds.
+   * @return false if the ID was already in the ledger.
+   */
+  public synchronized boolean add(int id, long time) {
+    if ((size + 1) * 2 > ids.length) {
+      rehash(ids.length * 2, 0);
+    }
+    if (!insert(ids, times, id, Math.max(1, time))) {
+      return false;
+    }
+    size++;
+    dirty = true;
+    return true;
+  }
+
+  /**
+   * Returns the number of IDs in the ledger.
+   *
+   * @return the ledger size.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Removes IDs older than the retention window.
+   *
+   * @return the number of IDs removed.
+   */
+  public synchronized int expire() {
+    long cutoff = System.currentTimeMillis() - retention;
+    int before = size;
+    int capacity = ids.length;
+    while (capacity > 64 && capacity / 4 > size) {
+      capacity /= 2;
+    }
+    rehash(capacity, cutoff);
+    if (size != before) {
+      dirty = true;
+    }
+    return before - size;
+  }
+
+  /**
+   * Loads the ledger from disk, dropping IDs older than the retention window.
+   */
+  public synchronized void load() {
+    if (!file.exists()) {
+      return;
+    }
+    long cutoff = System.currentTimeMillis() - retention;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        int id = in.readInt();
+        long time = in.readLong();
+        if (time >= cutoff) {
+          add(id, time);
+        }
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not load ledger! " + e.getMessage());
+    }
+    dirty = false;
+  }
+
+  /**
+   * Expires old IDs and writes the ledger to disk if it changed since the last save.
+   */
+  public void save() {
+    int[] ids;
+    long[] times;
+    int count;
+    synchronized (this) {
+      expire();
+      if (!dirty) {
+        return;
+      }
+      dirty = false;
+      ids = this.ids.clone();
+      times = this.times.clone();
+      count = size;
+    }
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+      out.writeInt(count);
+      for (int i = 0; i < ids.length; i++) {
+        if (times[i] != 0) {
+          out.writeInt(ids[i]);
+          out.writeLong(times[i]);
+        }
+      }
+      out.flush();
+      stream.getFD().sync();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save ledger! " + e.getMessage());
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save ledger! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Rebuilds the table at the passed capacity, keeping IDs dispatched at or after the cutoff.
+   */
+  private void rehash(int capacity, long cutoff) {
+    int[] newIds = new int[capacity];
+    long[] newTimes = new long[capacity];
+    int count = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (times[i] != 0 && times[i] >= cutoff) {
+        insert(newIds, newTimes, ids[i], times[i]);
+        count++;
+      }
+    }
+    ids = newIds;
+    times = newTimes;
+    size = count;
+  }
+
+  private static boolean insert(int[] ids, long[] times, int id, long time) {
+    int mask = ids.length - 1;
+    int i = slot(id, mask);
+    while (times[i] != 0) {
+      if (ids[i] == id) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    ids[i] = id;
+    times[i] = time;
+    return true;
+  }
+
+  private static int slot(int id, int mask) {
+    int hash = id * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+}
@@ -1,20 +1,90 @@
 package com.thekdub.craftingstore;
 
 import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A generic logger object for ServerElements.
+ * Messages are queued in a bounded buffer and written in batches by a background thread.
+ * Messages logged on the main server thread overflow separately, by default without ever waiting, so logging cannot
+ * stall a tick.
  */
 public class Logger {
 
+  /**
+   * What to do with a message when the buffer is full.
+   */
+  public enum Overflow {
+    /**
+     * Wait for space in the buffer.
+     */
+    BLOCK,
+    /**
+     * Discard the message.
+     */
+    DROP,
+    /**
+     * Wait for space for one message in every sample rate messages, discard the rest.
+     */
+    SAMPLE
+  }
+
   /**
    * The file directory path.
    */
   private final String PATH;
+  /**
+   * Messages waiting to be written.
+   */
+  private final ArrayBlockingQueue<Entry> buffer;
+  /**
+   * What to do with a message when the buffer is full.
+   */
+  private final Overflow overflow;
+  /**
+   * What to do with a message logged on the main server thread when the buffer is full.
+   */
+  private final Overflow mainThreadOverflow;
+  /**
+   * The main server thread, or null if there is none.
+   */
+  private final Thread mainThread;
+  /**
+   * With SAMPLE overflow, one in this many messages is kept while the buffer is full.
+   */
+  private final int sampleRate;
+  /**
+   * The number of lines written before the output is flushed.
+   */
+  private final int flushLines;
+  /**
+   * The longest time written lines wait before the output is flushed, in milliseconds.
+   */
+  private final long flushInterval;
+  /**
+   * The number of messages discarded since the last report.
+   */
+  private final AtomicLong dropped = new AtomicLong();
+  /**
+   * The number of messages that found the buffer full.
+   */
+  private final AtomicLong overflowed = new AtomicLong();
+  /**
+   * The background writer thread.
+   */
+  private final Thread thread;
+  /**
+   * Whether the logger is accepting messages for the background thread.
+   */
+  private volatile boolean running = true;
   /**
    * The log file.
    */
@@ -26,9 +96,69 @@ public class Logger {
 
   /**
    * Creates a new Logger object and updates the path variable using the plugin's directory.
+   * Starts the background writer thread using the logging settings from the plugin config.
+   * Must be created on the main server thread.
    */
   public Logger() {
-    this.PATH = CraftingStore.getInstance().getDataFolder() + File.separator + "logs" + File.separator;
+    this(CraftingStore.getInstance().getConfig(), CraftingStore.getInstance().getDataFolder(), Thread.currentThread());
+  }
+
+  /**
+   * Creates a new Logger object writing to the logs directory in the passed folder, for use off the server.
+   * Starts the background writer thread using the logging settings from the passed config.
+   *
+   * @param config the plugin config.
+   * @param folder the folder holding the logs directory.
+   */
+  public Logger(ConfigurationSection config, File folder) {
+    this(config, folder, null);
+  }
+
+  /**
+   * Creates a new Logger object writing to the logs directory in the passed folder.
+   * Starts the background writer thread using the logging settings from the passed config.
+   *
+   * @param config     the plugin config.
+   * @param folder     the folder holding the logs directory.
+   * @param mainThread the main server thread, or null if there is none.
+   */
+  public Logger(ConfigurationSection config, File folder, Thread mainThread) {
+    this(config, folder, mainThread, true);
+  }
+
+  /**
+   * Creates a new Logger object, starting the background writer thread only if asked to.
+   * Tests use a Logger that is not started to fill its buffer.
+   */
+  Logger(ConfigurationSection config, File folder, Thread mainThread, boolean start) {
+    this.PATH = folder + File.separator + "logs" + File.separator;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(1, config.getInt("logging.buffer-size", 4096)));
+    this.overflow = overflow(config.getString("logging.overflow", "BLOCK"), Overflow.BLOCK);
+    this.mainThreadOverflow = overflow(config.getString("logging.main-thread-overflow", "DROP"), Overflow.DROP);
+    this.mainThread = mainThread;
+    this.sampleRate = Math.max(1, config.getInt("logging.sample-rate", 10));
+    this.flushLines = Math.max(1, config.getInt("logging.flush-lines", 64));
+    this.flushInterval = Math.max(1, config.getLong("logging.flush-interval-ms", 1000));
+    this.thread = new Thread(this::drain, "CraftingStore-Logger");
+    this.thread.setDaemon(true);
+    if (start) {
+      start();
+    }
+  }
+
+  /**
+   * Starts the background writer thread.
+   */
+  void start() {
+    thread.start();
+  }
+
+  private static Overflow overflow(String value, Overflow fallback) {
+    try {
+      return Overflow.valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return fallback;
+    }
   }
 
   /**
@@ -61,26 +191,94 @@ public class Logger {
       return;
     }
     if (!file.getName().equalsIgnoreCase(Time.today() + ".log")) {
-      close();
+      closeWriter();
       init();
     }
   }
 
   /**
-   * Verifies log file fate.
-   * Writes the passed message to file.
-   * Saves the log file.
+   * Queues the passed message to be written to file.
+   * Once the logger is closed, the message is written immediately instead.
    *
    * @param MESSAGE the message to log to file.
    */
   public void log(final String MESSAGE) {
+    Entry entry = new Entry(System.currentTimeMillis(), MESSAGE);
+    if (!running) {
+      synchronized (this) {
+        write(entry);
+        save();
+      }
+      return;
+    }
+    if (buffer.offer(entry)) {
+      return;
+    }
+    Overflow overflow = Thread.currentThread() == mainThread ? mainThreadOverflow : this.overflow;
+    long count = overflowed.incrementAndGet();
+    if (overflow == Overflow.DROP || (overflow == Overflow.SAMPLE && count % sampleRate != 0)) {
+      dropped.incrementAndGet();
+      return;
+    }
+    try {
+      buffer.put(entry);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * Writes queued messages in batches until the logger is closed and the buffer is empty.
+   */
+  private void drain() {
+    ArrayList<Entry> batch = new ArrayList<>();
+    int unflushed = 0;
+    long lastFlush = System.currentTimeMillis();
+    while (running || !buffer.isEmpty()) {
+      try {
+        Entry first = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+        if (first != null) {
+          batch.add(first);
+          buffer.drainTo(batch);
+        }
+      } catch (InterruptedException e) {
+        buffer.drainTo(batch);
+      }
+      synchronized (this) {
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+          write(new Entry(System.currentTimeMillis(), "[WARNING] Dropped " + lost + " log messages!"));
+          unflushed++;
+        }
+        for (Entry entry : batch) {
+          write(entry);
+        }
+        unflushed += batch.size();
+        batch.clear();
+        long now = System.currentTimeMillis();
+        if (unflushed > 0 && (unflushed >= flushLines || now - lastFlush >= flushInterval || !running)) {
+          save();
+          unflushed = 0;
+          lastFlush = now;
+        }
+      }
+    }
+  }
+
+  /**
+   * Verifies log file date.
+   * Writes the passed entry to file without flushing.
+   *
+   * @param entry the entry to write.
+   */
+  private void write(Entry entry) {
     checkDate();
     try {
-      writer.write(Time.now() + " >> " + ChatColor.stripColor(MESSAGE) + "\n");
+      writer.write(Time.timestamp(entry.time) + " >> " + ChatColor.stripColor(entry.message) + "\n");
     } catch (Exception e) {
       e.printStackTrace();
     }
-    save();
   }
 
   /**
@@ -95,10 +293,31 @@ public class Logger {
   }
 
   /**
+   * Stops the background thread after it has written every queued message.
    * Flushes and closes the BufferedWriter.
-   * Resets the File and BufferedWriter objects to null for re-initialization.
    */
   public void close() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join(10000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      Entry entry;
+      while ((entry = buffer.poll()) != null) {
+        write(entry);
+      }
+      closeWriter();
+    }
+  }
+
+  /**
+   * Flushes and closes the BufferedWriter.
+   * Resets the File and BufferedWriter objects to null for re-initialization.
+   */
+  private void closeWriter() {
     init();
     try {
       writer.flush();
@@ -110,4 +329,17 @@ public class Logger {
     }
   }
 
+  /**
+   * A queued log message and the time it was logged.
+   */
+  private static class Entry {
+    private final long time;
+    private final String message;
+
+    private Entry(long time, String message) {
+      this.time = time;
+      this.message = message;
+    }
+  }
+
 }
@@ -0,0 +1,213 @@
+package com.thekdub.craftingstore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A process-wide registry of counters, gauges and histograms.
+ * Metric names may carry Prometheus labels, for example api_request_seconds{endpoint="queue"}.
+ * Timers record nanoseconds and report seconds.
+ */
+public class Metrics {
+
+  /**
+   * The prefix added to every metric name in Prometheus output.
+   */
+  private static final String PREFIX = "craftingstore_";
+  /**
+   * The quantiles reported for histograms.
+   */
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private static final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, LongSupplier> counterFunctions = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  private Metrics() {}
+
+  /**
+   * Increments the passed counter by one.
+   *
+   * @param name the counter name.
+   */
+  public static void increment(String name) {
+    add(name, 1);
+  }
+
+  /**
+   * Increments the passed counter.
+   *
+   * @param name   the counter name.
+   * @param amount the amount to add.
+   */
+  public static void add(String name, long amount) {
+    counters.computeIfAbsent(name, key -> new LongAdder()).add(amount);
+  }
+
+  /**
+   * Registers a counter read from an existing source, replacing any counter function of the same name.
+   *
+   * @param name     the counter name.
+   * @param supplier supplies the current count.
+   */
+  public static void counter(String name, LongSupplier supplier) {
+    counterFunctions.put(name, supplier);
+  }
+
+  /**
+   * Registers a gauge, replacing any gauge of the same name.
+   *
+   * @param name     the gauge name.
+   * @param supplier supplies the current value.
+   */
+  public static void gauge(String name, LongSupplier supplier) {
+    gauges.put(name, supplier);
+  }
+
+  /**
+   * Returns the passed histogram, creating it with a scale of 1 if needed.
+   *
+   * @param name the histogram name.
+   * @return the histogram.
+   */
+  public static Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, key -> new Histogram(1));
+  }
+
+  /**
+   * Records the time elapsed since the passed System.nanoTime() value in the passed timer.
+   *
+   * @param name  the timer name, which should end in _seconds.
+   * @param start the start time in nanoseconds.
+   */
+  public static void time(String name, long start) {
+    histograms.computeIfAbsent(name, key -> new Histogram(1e9)).record(System.nanoTime() - start);
+  }
+
+  /**
+   * Removes every gauge and counter function, so they do not hold on to objects from a previous enable.
+   */
+  public static void clearFunctions() {
+    counterFunctions.clear();
+    gauges.clear();
+  }
+
+  /**
+   * Returns one human readable line per metric, sorted by name.
+   *
+   * @return the metric lines.
+   */
+  public static List<String> summary() {
+    TreeMap<String, String> lines = new TreeMap<>();
+    counters.forEach((name, counter) -> lines.put(name, name + " = " + counter.sum()));
+    counterFunctions.forEach((name, counter) -> lines.put(name, name + " = " + read(counter)));
+    gauges.forEach((name, gauge) -> lines.put(name, name + " = " + read(gauge)));
+    histograms.forEach((name, histogram) -> lines.put(name, String.format(
+          "%s count=%d p50=%.4g p90=%.4g p99=%.4g max=%.4g", name, histogram.getCount(), histogram.getQuantile(0.5),
+          histogram.getQuantile(0.9), histogram.getQuantile(0.99), histogram.getMax())));
+    return new ArrayList<>(lines.values());
+  }
+
+  /**
+   * Renders every metric in the Prometheus text exposition format. Histograms are rendered as summaries.
+   *
+   * @return the Prometheus text.
+   */
+  public static String prometheus() {
+    StringBuilder builder = new StringBuilder();
+    HashSet<String> typed = new HashSet<>();
+    for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+      type(builder, typed, entry.getKey(), "counter");
+      builder.append(PREFIX).append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+    }
+    for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(counterFunctions).entrySet()) {
+      type(builder, typed, entry.getKey(), "counter");
+      builder.append(PREFIX).append(entry.getKey()).append(' ').append(read(entry.getValue())).append('\n');
+    }
+    for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+      type(builder, typed, entry.getKey(), "gauge");
+      builder.append(PREFIX).append(entry.getKey()).append(' ').append(read(entry.getValue())).append('\n');
+    }
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+      String name = entry.getKey();
+      Histogram histogram = entry.getValue();
+      type(builder, typed, name, "summary");
+      for (double quantile : QUANTILES) {
+        builder.append(PREFIX).append(label(name, "quantile=\"" + quantile + "\"")).append(' ')
+              .append(histogram.getQuantile(quantile)).append('\n');
+      }
+      builder.append(PREFIX).append(suffix(name, "_sum")).append(' ').append(histogram.getSum()).append('\n');
+      builder.append(PREFIX).append(suffix(name, "_count")).append(' ').append(histogram.getCount()).append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes the Prometheus text to the passed file, replacing it atomically.
+   *
+   * @param file the file to write.
+   */
+  public static void dump(File file) {
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp)) {
+      stream.write(prometheus().getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not write metrics! " + e.getMessage());
+      return;
+    }
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not write metrics! " + e.getMessage());
+    }
+  }
+
+  private static long read(LongSupplier gauge) {
+    try {
+      return gauge.getAsLong();
+    } catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  private static void type(StringBuilder builder, HashSet<String> typed, String name, String type) {
+    String base = base(name);
+    if (typed.add(base)) {
+      builder.append("# TYPE ").append(PREFIX).append(base).append(' ').append(type).append('\n');
+    }
+  }
+
+  private static String base(String name) {
+    int brace = name.indexOf('{');
+    return brace < 0 ? name : name.substring(0, brace);
+  }
+
+  private static String suffix(String name, String suffix) {
+    int brace = name.indexOf('{');
+    return brace < 0 ? name + suffix : name.substring(0, brace) + suffix + name.substring(brace);
+  }
+
+  /**
+   * Adds the passed label to the passed metric name.
+   *
+   * @param name  the metric name, optionally with labels.
+   * @param label the label, for example store="default".
+   * @return the labelled metric name.
+   */
+  public static String label(String name, String label) {
+    return name.endsWith("}") ? name.substring(0, name.length() - 1) + "," + label + "}" : name + "{" + label + "}";
+  }
+}
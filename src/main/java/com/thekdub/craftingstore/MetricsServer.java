@@ -0,0 +1,117 @@
+package com.thekdub.craftingstore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP listener serving /metrics in Prometheus text format and /health.
+ * Requests are handled on the server's own thread pool and only read thread-safe state, never the Bukkit main
+ * thread. /health fails once any store has not polled successfully within the configured number of maximum poll
+ * intervals.
+ */
+public class MetricsServer {
+
+  /**
+   * The Watchers whose polls are checked by /health, one per store.
+   */
+  private final List<Watcher> watchers;
+  /**
+   * The longest time since the last successful poll before /health fails, in milliseconds.
+   */
+  private final long healthWindow;
+  /**
+   * The threads handling requests.
+   */
+  private final ExecutorService executor;
+  /**
+   * The underlying JDK HTTP server.
+   */
+  private final HttpServer server;
+
+  /**
+   * Creates a new MetricsServer using the metrics settings from the plugin config.
+   *
+   * @param watchers the Watchers whose polls are checked by /health, one per store.
+   * @throws IOException if the listener cannot be bound.
+   */
+  public MetricsServer(List<Watcher> watchers) throws IOException {
+    FileConfiguration config = CraftingStore.getInstance().getConfig();
+    this.watchers = watchers;
+    this.healthWindow = Math.max(1, config.getLong("metrics.http.health-intervals", 3)) *
+          Math.max(1, config.getLong("polling.max-interval", 120)) * 1000L;
+    this.executor = Executors.newFixedThreadPool(Math.max(1, config.getInt("metrics.http.threads", 2)), runnable -> {
+      Thread thread = new Thread(runnable, "CraftingStore-Metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.server = HttpServer.create(new InetSocketAddress(config.getString("metrics.http.host", "127.0.0.1"),
+          config.getInt("metrics.http.port", 9225)), 0);
+    server.createContext("/metrics", exchange -> respond(exchange, 200, Metrics.prometheus(),
+          "text/plain; version=0.0.4; charset=utf-8"));
+    server.createContext("/health", this::health);
+    server.setExecutor(executor);
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  public void start() {
+    server.start();
+    CraftingStore.getLog().log("[SUCCESS] Metrics listening on " + server.getAddress() + "!");
+  }
+
+  /**
+   * Stops the listener and its threads.
+   */
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void health(HttpExchange exchange) throws IOException {
+    StringBuilder unhealthy = new StringBuilder();
+    for (Watcher watcher : watchers) {
+      long since = System.currentTimeMillis() - watcher.getLastSuccess();
+      if (since > healthWindow) {
+        unhealthy.append("UNHEALTHY: ").append(watcher.getClient().getName()).append(" last polled successfully ")
+              .append(Time.millisToShortReadable(since)).append(" ago\n");
+      }
+    }
+    if (unhealthy.length() > 0) {
+      respond(exchange, 503, unhealthy.toString(), "text/plain; charset=utf-8");
+    }
+    else {
+      respond(exchange, 200, "OK\n", "text/plain; charset=utf-8");
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int code, String text, String type) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", type);
+      if (exchange.getRequestMethod().equals("HEAD")) {
+        exchange.sendResponseHeaders(code, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(code, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+}
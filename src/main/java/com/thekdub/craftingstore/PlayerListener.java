@@ -0,0 +1,61 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PlayerListener implements Listener {
+
+  /**
+   * Lowercased names of online players, kept from join and quit events so poll threads need not call into Bukkit.
+   */
+  private static final Set<String> online = ConcurrentHashMap.newKeySet();
+
+  private final List<PollScheduler> pollers;
+
+  public PlayerListener(List<PollScheduler> pollers) {
+    this.pollers = pollers;
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onPlayerJoin(PlayerJoinEvent event) {
+    setOnline(event.getPlayer().getName(), true);
+    for (PollScheduler poller : pollers) {
+      poller.flushPending(event.getPlayer().getName());
+    }
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onPlayerQuit(PlayerQuitEvent event) {
+    setOnline(event.getPlayer().getName(), false);
+  }
+
+  /**
+   * Returns whether the passed player was online as of the last join or quit event. Safe to call from any thread.
+   *
+   * @param mcName the player name.
+   * @return whether the player is online.
+   */
+  public static boolean isOnline(String mcName) {
+    return online.contains(mcName.toLowerCase());
+  }
+
+  static void setOnline(String mcName, boolean isOnline) {
+    if (isOnline) {
+      online.add(mcName.toLowerCase());
+    }
+    else {
+      online.remove(mcName.toLowerCase());
+    }
+  }
+
+  static void clearOnline() {
+    online.clear();
+  }
+}
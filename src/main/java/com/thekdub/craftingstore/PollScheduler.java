@@ -0,0 +1,225 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the Watcher on an adaptive interval.
+ * Polls at the minimum interval while commands keep arriving and backs off toward the maximum while the queue
+ * stays empty. Each interval is jittered so servers sharing a token do not poll in lockstep.
+ * Polls run on an executor shared by every store, so stores are polled concurrently on a bounded set of threads.
+ */
+public class PollScheduler implements Runnable {
+
+  /**
+   * The Watcher to run on each poll.
+   */
+  private final Watcher watcher;
+  /**
+   * The executor polls run on.
+   */
+  private final ScheduledExecutorService executor;
+  /**
+   * The shortest interval between polls, in ticks.
+   */
+  private final long minTicks;
+  /**
+   * The longest interval between polls, in ticks.
+   */
+  private final long maxTicks;
+  /**
+   * The multiplier applied to the interval after a poll with no new commands.
+   */
+  private final double backoff;
+  /**
+   * The maximum jitter applied to each interval, as a fraction of the interval.
+   */
+  private final double jitter;
+  /**
+   * The source of jitter.
+   */
+  private final Random random;
+
+  /**
+   * The current interval between polls, in ticks.
+   */
+  private long interval;
+  /**
+   * The time the last poll started, in milliseconds.
+   */
+  private long lastPoll = 0;
+  private ScheduledFuture<?> task = null;
+  private boolean running = false;
+  private boolean hurried = false;
+  private boolean stopped = false;
+
+  /**
+   * Creates a new PollScheduler using the polling settings from the plugin config.
+   *
+   * @param watcher  the Watcher to run on each poll.
+   * @param executor the executor polls run on.
+   */
+  public PollScheduler(Watcher watcher, ScheduledExecutorService executor) {
+    this(watcher, executor, CraftingStore.getInstance().getConfig());
+  }
+
+  /**
+   * Creates a new PollScheduler using the polling settings from the passed config.
+   *
+   * @param watcher  the Watcher to run on each poll.
+   * @param executor the executor polls run on.
+   * @param config   the plugin config.
+   */
+  public PollScheduler(Watcher watcher, ScheduledExecutorService executor, ConfigurationSection config) {
+    this(watcher, executor, config, new Random());
+  }
+
+  /**
+   * Creates a new PollScheduler drawing its jitter from the passed source.
+   *
+   * @param watcher  the Watcher to run on each poll.
+   * @param executor the executor polls run on.
+   * @param config   the plugin config.
+   * @param random   the source of jitter.
+   */
+  PollScheduler(Watcher watcher, ScheduledExecutorService executor, ConfigurationSection config, Random random) {
+    this.watcher = watcher;
+    this.executor = executor;
+    this.random = random;
+    this.minTicks = Math.max(1, config.getLong("polling.min-interval", 5) * 20);
+    this.maxTicks = Math.max(minTicks, config.getLong("polling.max-interval", 120) * 20);
+    this.backoff = Math.max(1, config.getDouble("polling.backoff", 1.5));
+    this.jitter = Math.min(1, Math.max(0, config.getDouble("polling.jitter", 0.1)));
+    this.interval = minTicks;
+  }
+
+  /**
+   * Schedules the first poll after the minimum interval.
+   */
+  public synchronized void start() {
+    stopped = false;
+    schedule(jittered(minTicks));
+  }
+
+  /**
+   * Cancels the next poll and prevents a running poll from scheduling another.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    cancel();
+  }
+
+  /**
+   * Requests a poll as soon as the minimum interval since the last poll allows.
+   * Called when something suggests deliveries are waiting, such as a player with pending commands joining.
+   */
+  public synchronized void hurry() {
+    if (stopped) {
+      return;
+    }
+    interval = minTicks;
+    if (running) {
+      hurried = true;
+      return;
+    }
+    cancel();
+    schedule(Math.max(1, minTicks - (System.currentTimeMillis() - lastPoll) / 50));
+  }
+
+  /**
+   * Claims and queues the passed player's pending commands on the poll executor, so the main thread never waits for
+   * a claim, then hurries the next poll if there were any.
+   *
+   * @param mcName the player who joined.
+   */
+  public void flushPending(String mcName) {
+    try {
+      executor.execute(() -> {
+        try {
+          if (watcher.flushPending(mcName) > 0) {
+            hurry();
+          }
+        } catch (RuntimeException e) {
+          CraftingStore.getLog().log("[ERROR] Could not flush pending commands for " + mcName + "! " + e);
+        }
+      });
+    } catch (RejectedExecutionException ignored) {
+      // The plugin is shutting down, and the commands stay pending in the journal.
+    }
+  }
+
+  @Override
+  public void run() {
+    synchronized (this) {
+      running = true;
+      hurried = false;
+      task = null;
+      lastPoll = System.currentTimeMillis();
+    }
+    try {
+      watcher.run();
+    } catch (RuntimeException e) {
+      CraftingStore.getLog().log("[ERROR] Poll failed for " + watcher.getClient().getName() + "! " + e);
+    } finally {
+      synchronized (this) {
+        running = false;
+        if (!stopped) {
+          if (hurried || watcher.getLastReceived() > 0) {
+            interval = minTicks;
+          }
+          else {
+            interval = Math.min(maxTicks, (long) Math.ceil(interval * backoff));
+          }
+          schedule(jittered(interval));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the current interval between polls.
+   *
+   * @return the current poll interval in ticks.
+   */
+  public synchronized long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the Watcher run on each poll.
+   *
+   * @return the Watcher.
+   */
+  public Watcher getWatcher() {
+    return watcher;
+  }
+
+  /**
+   * Applies random jitter to the passed interval.
+   *
+   * @param ticks the interval in ticks.
+   * @return the jittered interval in ticks, never less than 1.
+   */
+  private long jittered(long ticks) {
+    long spread = (long) (ticks * jitter);
+    return Math.max(1, ticks + (spread > 0 ? (long) ((random.nextDouble() * 2 - 1) * spread) : 0));
+  }
+
+  private void schedule(long ticks) {
+    if (!executor.isShutdown()) {
+      task = executor.schedule(this, ticks * 50, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void cancel() {
+    if (task != null) {
+      task.cancel(false);
+      task = null;
+    }
+  }
+}
@@ -0,0 +1,351 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Per-day sales rollups, maintained incrementally as payments are synced.
+ * Each day keeps its payment count, revenue, and revenue per package and per buyer, so a sales summary for any
+ * range of days merges at most one small rollup per day and never reads raw payments.
+ * Payments with an excluded status, such as refunds and chargebacks, are skipped.
+ * Rollups are persisted as JSON lines to sales.json. Each save appends only the days that changed, and a later line
+ * replaces an earlier one for the same day. The file is rewritten once it holds twice as many lines as days.
+ */
+public class SalesRollup {
+
+  /**
+   * The statuses excluded when none are configured.
+   */
+  private static final List<String> DEFAULT_EXCLUDED = Arrays.asList("refunded", "chargeback", "cancelled", "failed");
+
+  /**
+   * The file rollups are persisted to.
+   */
+  private final File file;
+  /**
+   * Payment statuses that are not counted as sales, in lower case.
+   */
+  private final HashSet<String> excluded = new HashSet<>();
+  /**
+   * Rollups by the millisecond start of their day.
+   */
+  private final TreeMap<Long, DailySales> days = new TreeMap<>();
+  /**
+   * The highest payment ID included in the rollups.
+   */
+  private int lastId = 0;
+  /**
+   * The number of lines in the rollup file.
+   */
+  private int records = 0;
+
+  /**
+   * Creates a new SalesRollup persisted to the passed file, using the excluded statuses from the plugin config, and
+   * loads it from disk.
+   *
+   * @param file the file rollups are persisted to.
+   */
+  public SalesRollup(File file) {
+    this(file, CraftingStore.getInstance().getConfig());
+  }
+
+  /**
+   * Creates a new SalesRollup persisted to the passed file, using the excluded statuses from the passed config, and
+   * loads it from disk.
+   *
+   * @param file   the file rollups are persisted to.
+   * @param config the plugin config.
+   */
+  public SalesRollup(File file, ConfigurationSection config) {
+    this.file = file;
+    this.excluded.addAll(excludedStatuses(config));
+    load();
+  }
+
+  /**
+   * Returns the payment statuses that are not counted as sales in the passed config.
+   *
+   * @param config the plugin config.
+   * @return the excluded statuses, in lower case.
+   */
+  static Set<String> excludedStatuses(ConfigurationSection config) {
+    List<String> statuses = config.contains("stats.excluded-statuses") ?
+          config.getStringList("stats.excluded-statuses") : DEFAULT_EXCLUDED;
+    HashSet<String> excluded = new HashSet<>();
+    for (String status : statuses) {
+      excluded.add(status.toLowerCase());
+    }
+    return excluded;
+  }
+
+  /**
+   * Adds the passed payments to their days' rollups, skipping any at or below the highest included ID, and saves
+   * the changed rollups.
+   *
+   * @param transactions the payments to add, in ascending ID order.
+   */
+  public void add(List<Transaction> transactions) {
+    TreeSet<Long> changed = new TreeSet<>();
+    synchronized (this) {
+      for (Transaction transaction : transactions) {
+        if (transaction.getId() <= lastId) {
+          continue;
+        }
+        lastId = transaction.getId();
+        if (transaction.getStatus() != null && excluded.contains(transaction.getStatus().toLowerCase())) {
+          continue;
+        }
+        long day = Time.startOfDay(TransactionStore.millis(transaction.getTimestamp()));
+        days.computeIfAbsent(day, DailySales::new).add(transaction);
+        changed.add(day);
+      }
+      if (changed.isEmpty()) {
+        return;
+      }
+    }
+    save(changed);
+  }
+
+  /**
+   * Adds every stored payment newer than the rollups, rebuilding them after the rollup file was lost.
+   *
+   * @param store the payment store.
+   */
+  public void backfill(TransactionStore store) {
+    int last = getLastId();
+    if (store.getMaxId() <= last) {
+      return;
+    }
+    ArrayList<Transaction> missing = new ArrayList<>();
+    for (int row = 0, rows = store.size(); row < rows; row++) {
+      Transaction transaction = store.get(row);
+      if (transaction.getId() > last) {
+        missing.add(transaction);
+      }
+    }
+    add(missing);
+    CraftingStore.getLog().log("[SUCCESS] Rebuilt sales rollups from " + missing.size() + " stored payments!");
+  }
+
+  /**
+   * Summarizes sales made since the passed time.
+   *
+   * @param from the start of the first day to include, in milliseconds.
+   * @param top  the number of top packages and buyers to include.
+   * @return the summary.
+   */
+  public synchronized Summary summarize(long from, int top) {
+    Summary summary = new Summary();
+    HashMap<String, Double> packages = new HashMap<>();
+    HashMap<String, Double> buyers = new HashMap<>();
+    for (DailySales day : days.tailMap(Time.startOfDay(from), true).values()) {
+      summary.count += day.getCount();
+      summary.sum += day.getSum();
+      day.getPackages().forEach((name, sum) -> packages.merge(name, sum, Double::sum));
+      day.getBuyers().forEach((name, sum) -> buyers.merge(name, sum, Double::sum));
+    }
+    summary.topPackages = top(packages, top);
+    summary.topBuyers = top(buyers, top);
+    return summary;
+  }
+
+  /**
+   * Returns the highest payment ID included in the rollups.
+   *
+   * @return the highest included payment ID.
+   */
+  public synchronized int getLastId() {
+    return lastId;
+  }
+
+  /**
+   * Loads rollups from disk.
+   */
+  private synchronized void load() {
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        records++;
+        try {
+          DailySales day = Json.DAILY_SALES.readValue(line);
+          days.put(day.getDay(), day);
+          lastId = Math.max(lastId, day.getLastId());
+        } catch (IOException e) {
+          CraftingStore.getLog().log("[ERROR] Could not map from JSON! " + e.getMessage());
+        }
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not load sales rollups! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Appends the rollups of the passed days to disk, or rewrites every rollup once the file holds twice as many lines
+   * as days. Saves are serialized on the file, and each writes the rollups as they are when it starts.
+   *
+   * @param changed the days whose rollups changed.
+   */
+  private void save(Collection<Long> changed) {
+    synchronized (file) {
+      ArrayList<String> lines = new ArrayList<>();
+      boolean compact;
+      synchronized (this) {
+        compact = records + changed.size() > days.size() * 2;
+        try {
+          for (long day : compact ? days.keySet() : changed) {
+            lines.add(Json.WRITER.writeValueAsString(days.get(day)));
+          }
+        } catch (IOException e) {
+          CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
+          return;
+        }
+      }
+      if (compact ? rewrite(lines) : append(lines)) {
+        synchronized (this) {
+          records = compact ? lines.size() : records + lines.size();
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends the passed lines to the rollup file, starting on a new line if the file ends in a partial line.
+   *
+   * @return whether the lines were written.
+   */
+  private boolean append(List<String> lines) {
+    boolean torn = false;
+    if (file.length() > 0) {
+      try (RandomAccessFile last = new RandomAccessFile(file, "r")) {
+        last.seek(last.length() - 1);
+        torn = last.read() != '\n';
+      } catch (IOException e) {
+        CraftingStore.getLog().log("[ERROR] Could not save sales rollups! " + e.getMessage());
+        return false;
+      }
+    }
+    try (FileOutputStream stream = new FileOutputStream(file, true);
+         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      if (torn) {
+        writer.write('\n');
+      }
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+      writer.flush();
+      stream.getFD().sync();
+      return true;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save sales rollups! " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Replaces the rollup file with the passed lines.
+   *
+   * @return whether the lines were written.
+   */
+  private boolean rewrite(List<String> lines) {
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(temp);
+         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+      writer.flush();
+      stream.getFD().sync();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save sales rollups! " + e.getMessage());
+      return false;
+    }
+    try {
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return true;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save sales rollups! " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Returns the passed number of highest valued entries, highest first.
+   */
+  private static List<Map.Entry<String, Double>> top(Map<String, Double> values, int top) {
+    PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<>(Math.max(1, top),
+          Map.Entry.comparingByValue());
+    for (Map.Entry<String, Double> entry : values.entrySet()) {
+      if (heap.size() < top) {
+        heap.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+      }
+      else if (top > 0 && entry.getValue() > heap.peek().getValue()) {
+        heap.poll();
+        heap.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+      }
+    }
+    ArrayList<Map.Entry<String, Double>> result = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      result.add(0, heap.poll());
+    }
+    return result;
+  }
+
+  /**
+   * Sales totals over a range of days.
+   */
+  public static class Summary {
+    private int count = 0;
+    private double sum = 0;
+    private List<Map.Entry<String, Double>> topPackages;
+    private List<Map.Entry<String, Double>> topBuyers;
+
+    public int getCount() {
+      return count;
+    }
+
+    public double getSum() {
+      return sum;
+    }
+
+    public List<Map.Entry<String, Double>> getTopPackages() {
+      return topPackages;
+    }
+
+    public List<Map.Entry<String, Double>> getTopBuyers() {
+      return topBuyers;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.FormBody;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The CraftingStore API for one store token.
+ * Each store has its own queue cache, persistence folder and metric labels, and all stores share the connection
+ * pool of the APIHandler client.
+ */
+public class StoreClient {
+
+  /**
+   * The store name used in logs and metric labels.
+   */
+  private final String name;
+  /**
+   * The store token.
+   */
+  private final String token;
+  /**
+   * The folder holding this store's persistence files.
+   */
+  private final File folder;
+  /**
+   * The metric label identifying this store.
+   */
+  private final String label;
+  private final AtomicLong conditionalHits = new AtomicLong();
+  private final AtomicLong hashHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  /**
+   * The ETag of the last queue response that was read successfully.
+   */
+  private volatile String queueETag = null;
+  /**
+   * The hash of the last queue response without an ETag that was read successfully.
+   */
+  private volatile byte[] queueHash = null;
+  /**
+   * Counts invalidations of the queue cache, so a response whose consumer invalidated the cache is not cached.
+   */
+  private final AtomicInteger queueGeneration = new AtomicInteger();
+
+  /**
+   * Creates a new StoreClient.
+   *
+   * @param name   the store name used in logs and metric labels.
+   * @param token  the store token.
+   * @param folder the folder holding this store's persistence files.
+   */
+  public StoreClient(String name, String token, File folder) {
+    this.name = name;
+    this.token = token;
+    this.folder = folder;
+    this.label = "store=\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    folder.mkdirs();
+    Metrics.counter(metric("queue_cache_hits_total{type=\"conditional\"}"), conditionalHits::get);
+    Metrics.counter(metric("queue_cache_hits_total{type=\"hash\"}"), hashHits::get);
+    Metrics.counter(metric("queue_cache_misses_total"), misses::get);
+  }
+
+  public TransactionList getTransactions(int page) {
+    Request request = request("/v7/payments?page=" + page).build();
+    long start = System.nanoTime();
+    try (Response response = APIHandler.getClient().getClient().newCall(request).execute();
+         ResponseBody body = response.body()) {
+      if (response.isSuccessful() && body != null) {
+        long read = System.nanoTime();
+        TransactionList list = Json.TRANSACTION_LIST.readValue(body.byteStream());
+        Metrics.time(metric("json_read_seconds{type=\"payments\"}"), read);
+        return list;
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Unable to retrieve transactions for " + name + "! " + e.getMessage());
+    } finally {
+      Metrics.time(metric("api_request_seconds{endpoint=\"payments\"}"), start);
+    }
+    return new TransactionList();
+  }
+
+  public APIHandler.Poll streamCommands(Consumer<Command> consumer) {
+    Request.Builder builder = request("/v4/queue");
+    String etag = queueETag;
+    int generation = queueGeneration.get();
+    if (etag != null) {
+      builder.addHeader("If-None-Match", etag);
+    }
+    long start = System.nanoTime();
+    try (Response response = APIHandler.getClient().getClient().newCall(builder.build()).execute();
+         ResponseBody body = response.body()) {
+      if (response.code() == 304) {
+        conditionalHits.incrementAndGet();
+        return APIHandler.Poll.UNCHANGED;
+      }
+      if (response.isSuccessful() && body != null) {
+        boolean success;
+        String tag = response.header("ETag");
+        if (tag != null) {
+          success = readQueue(body.byteStream(), consumer);
+          queueETag = success && generation == queueGeneration.get() ? tag : null;
+          queueHash = null;
+        }
+        else {
+          byte[] bytes = body.bytes();
+          byte[] hash = APIHandler.sha256(bytes);
+          if (Arrays.equals(hash, queueHash)) {
+            hashHits.incrementAndGet();
+            return APIHandler.Poll.UNCHANGED;
+          }
+          success = readQueue(new ByteArrayInputStream(bytes), consumer);
+          queueETag = null;
+          queueHash = success && generation == queueGeneration.get() ? hash : null;
+        }
+        if (success) {
+          misses.incrementAndGet();
+          return APIHandler.Poll.UPDATED;
+        }
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Unable to retrieve commands for " + name + "! " + e.getMessage());
+    } finally {
+      Metrics.time(metric("api_request_seconds{endpoint=\"queue\"}"), start);
+    }
+    return APIHandler.Poll.FAILED;
+  }
+
+  /**
+   * Streams the commands of a /v4/queue response to the passed consumer. json_read_seconds{type="queue"} records the
+   * time spent reading and parsing the response, without the time spent in the consumer.
+   */
+  private boolean readQueue(InputStream in, Consumer<Command> consumer) throws IOException {
+    long[] consumed = new long[1];
+    long read = System.nanoTime();
+    boolean success = APIHandler.readCommands(in, command -> {
+      long callback = System.nanoTime();
+      consumer.accept(command);
+      consumed[0] += System.nanoTime() - callback;
+    });
+    Metrics.time(metric("json_read_seconds{type=\"queue\"}"), read + consumed[0]);
+    return success;
+  }
+
+  /**
+   * Makes the next poll read the queue in full, even when called by the consumer of a poll in progress.
+   */
+  public void invalidateQueueCache() {
+    queueGeneration.incrementAndGet();
+    queueETag = null;
+    queueHash = null;
+  }
+
+  public boolean complete(int[] ids) {
+    long start = System.nanoTime();
+    try {
+      Request request = request("/v4/queue/markComplete")
+            .post(new FormBody.Builder().add("removeIds", Json.WRITER.writeValueAsString(ids)).build())
+            .build();
+      try (Response response = APIHandler.getClient().getClient().newCall(request).execute();
+           ResponseBody body = response.body()) {
+        if (response.isSuccessful() && body != null) {
+          JsonNode result = Json.MAPPER.readTree(body.byteStream());
+          if (result != null && result.path("success").asBoolean(false)) {
+            return true;
+          }
+          CraftingStore.getLog().log("[ERROR] Unable to complete commands " + Arrays.toString(ids) + "! " +
+                (result == null ? "Empty response" : result.path("message").asText("No message")));
+        }
+        else {
+          CraftingStore.getLog().log("[ERROR] Unable to complete commands " + Arrays.toString(ids) + "! HTTP " +
+                response.code());
+        }
+      }
+      return false;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Unable to complete commands " + Arrays.toString(ids) + "! " + e.getMessage());
+      return false;
+    } finally {
+      Metrics.time(metric("api_request_seconds{endpoint=\"complete\"}"), start);
+    }
+  }
+
+  /**
+   * Returns the passed metric name labelled with this store.
+   *
+   * @param metric the metric name, optionally with labels.
+   * @return the labelled metric name.
+   */
+  public String metric(String metric) {
+    return Metrics.label(metric, label);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public File getFolder() {
+    return folder;
+  }
+
+  public long getConditionalHits() {
+    return conditionalHits.get();
+  }
+
+  public long getHashHits() {
+    return hashHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private Request.Builder request(String path) {
+    return new Request.Builder()
+          .addHeader("token", token)
+          .url(APIHandler.getBaseUrl() + path);
+  }
+}
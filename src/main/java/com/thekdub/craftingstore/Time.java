@@ -1,12 +1,19 @@
 package com.thekdub.craftingstore;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAdjusters;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -19,10 +26,46 @@ public class Time {
    */
   private static final int[] monthLengths = new int[]{31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
 
+  /**
+   * The pattern matched by isTimeStr.
+   */
+  private static final Pattern TIME_STR =
+        Pattern.compile("^([0-9]+y)?([0-9]+y)?([0-9]+mo)?([0-9]+w)?([0-9]+d)?([0-9]+h)?([0-9]+m)?([0-9]+s?)?$");
+
+  /**
+   * The zone all times are rendered in, resolved once.
+   */
+  private static final ZoneId ZONE = ZoneId.of("America/New_York");
+  /**
+   * The legacy TimeZone equivalent of ZONE, for Calendar based methods.
+   */
+  private static final TimeZone TIME_ZONE = TimeZone.getTimeZone(ZONE);
+  /**
+   * Formatters by pattern, created once per pattern. DateTimeFormatter is immutable and thread-safe.
+   */
+  private static final ConcurrentHashMap<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+  /**
+   * The formatter used for today().
+   */
+  private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZONE);
+  /**
+   * The formatter used for now() and timestamp().
+   */
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss z").withZone(ZONE);
+  /**
+   * The rendered current day, valid until the start of the next day.
+   */
+  private static volatile Cached cachedDay = new Cached(0, 0, null);
+  /**
+   * The most recently rendered timestamp, valid for the rest of its second.
+   */
+  private static volatile Cached cachedSecond = new Cached(0, 0, null);
+
   /**
    * Converts the passed milliseconds to the passed date format.
    * Uses America/New_York timezone.
    * Example date format: "MM-dd-yyyy HH:mm"
+   * Formats use SimpleDateFormat pattern letters and are translated to a cached java.time formatter.
    * <p>
    * Text: 4+ provides full-form, otherwise abbreviated or short form used.
    * Number: Number of letters is the minimum number of digits
@@ -58,10 +101,69 @@ public class Time {
    */
   public static String millisToDateTime(long millis, String dateFormat) {
     // "MM-dd-yyyy HH:mm" = MonthMonth-DayDay-YearYearYearYear HourHour:MinuteMinute
-    DateFormat format = new SimpleDateFormat(dateFormat);
-    format.setTimeZone(TimeZone.getTimeZone("America/New_York"));
-    Date time = new Date(millis);
-    return format.format(time);
+    return formatters.computeIfAbsent(dateFormat, Time::formatter).format(Instant.ofEpochMilli(millis));
+  }
+
+  /**
+   * Translates the passed SimpleDateFormat pattern to an equivalent formatter in America/New_York timezone.
+   * Letters java.time reads differently (u, F and S) become explicit fields, and characters java.time reserves
+   * ([, ], {, } and #) become literals.
+   *
+   * @param pattern the SimpleDateFormat pattern.
+   * @return the formatter.
+   */
+  private static DateTimeFormatter formatter(String pattern) {
+    DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+    int i = 0;
+    while (i < pattern.length()) {
+      char c = pattern.charAt(i);
+      if (c == '\'') {
+        int end = pattern.indexOf('\'', i + 1);
+        while (end >= 0 && end + 1 < pattern.length() && pattern.charAt(end + 1) == '\'') {
+          end = pattern.indexOf('\'', end + 2);
+        }
+        if (end < 0) {
+          throw new IllegalArgumentException("Unterminated quote in " + pattern);
+        }
+        builder.appendLiteral(end == i + 1 ? "'" : pattern.substring(i + 1, end).replace("''", "'"));
+        i = end + 1;
+        continue;
+      }
+      int run = i + 1;
+      while (run < pattern.length() && pattern.charAt(run) == c) {
+        run++;
+      }
+      int count = run - i;
+      if (c == 'u') {
+        appendNumber(builder, ChronoField.DAY_OF_WEEK, count);
+      }
+      else if (c == 'F') {
+        appendNumber(builder, ChronoField.ALIGNED_WEEK_OF_MONTH, count);
+      }
+      else if (c == 'S') {
+        appendNumber(builder, ChronoField.MILLI_OF_SECOND, count);
+      }
+      else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        builder.appendPattern(pattern.substring(i, run));
+      }
+      else {
+        builder.appendLiteral(pattern.substring(i, run));
+      }
+      i = run;
+    }
+    return builder.toFormatter().withZone(ZONE);
+  }
+
+  /**
+   * Appends the passed field with at least the passed number of digits, as SimpleDateFormat renders numbers.
+   */
+  private static void appendNumber(DateTimeFormatterBuilder builder, ChronoField field, int digits) {
+    if (digits == 1) {
+      builder.appendValue(field);
+    }
+    else {
+      builder.appendValue(field, Math.min(digits, 19), 19, SignStyle.NOT_NEGATIVE);
+    }
   }
 
   /**
@@ -177,66 +279,134 @@ public class Time {
    * @return the millisecond equivalent of the time string.
    */
   public static long parseTimeStr(String time) {
-    if (!isTimeStr(time)) {
-      return -1;
-    }
-    Pattern timePattern = Pattern.compile("(?:([0-9]+)\\s*y[a-z]*[,\\s]*)?(?:([0-9]+)\\s*mo[a-z]*[,\\s]*)?(?:" +
-          "([0-9]+)\\s*w[a-z]*[,\\s]*)?(?:([0-9]+)\\s*d[a-z]*[,\\s]*)?(?:([0-9]+)\\s*h[a-z]*[,\\s]*)?(?:(" +
-          "[0-9]+)\\s*m[a-z]*[,\\s]*)?(?:([0-9]+)\\s*(?:s[a-z]*)?)?", 2);
-    Matcher m = timePattern.matcher(time);
+    return parseTimeStr(time, 0, time.length());
+  }
+
+  /**
+   * Parses the passed section of a time string to milliseconds without copying it.
+   * Scans the characters once, validating and accumulating each #unit section as it goes.
+   *
+   * @param time  the characters holding the time string.
+   * @param start the index of the first character of the time string.
+   * @param end   the index after the last character of the time string.
+   * @return the millisecond equivalent of the time string, or -1 if it is not a valid time string.
+   */
+  public static long parseTimeStr(CharSequence time, int start, int end) {
     long years = 0;
-    long msyear = 31536000000L;
     long months = 0;
-    long msmonth = 2628000000L;
     long weeks = 0;
-    long msweek = 604800000;
     long days = 0;
-    long msday = 86400000;
     long hours = 0;
-    long mshour = 3600000;
     long minutes = 0;
-    long msminute = 60000;
     long seconds = 0;
-    long mssecond = 1000;
-    boolean found = false;
-    while (m.find()) {
-      if ((m.group() != null) && (!m.group().isEmpty())) {
-        for (int i = 0; i < m.groupCount(); i++) {
-          if ((m.group(i) != null) && (!m.group(i).isEmpty())) {
-            found = true;
-            break;
-          }
+    int overflowStart = -1;
+    int overflowEnd = -1;
+    int last = -1;
+    int i = start;
+    while (i < end) {
+      int digits = i;
+      long value = 0;
+      char c;
+      while (i < end && (c = time.charAt(i)) >= '0' && c <= '9') {
+        if (value <= Integer.MAX_VALUE) {
+          value = value * 10 + (c - '0');
         }
-        if (found) {
-          if ((m.group(1) != null) && (!m.group(1).isEmpty())) {
-            years = Integer.parseInt(m.group(1));
-          }
-          if ((m.group(2) != null) && (!m.group(2).isEmpty())) {
-            months = Integer.parseInt(m.group(2));
-          }
-          if ((m.group(3) != null) && (!m.group(3).isEmpty())) {
-            weeks = Integer.parseInt(m.group(3));
-          }
-          if ((m.group(4) != null) && (!m.group(4).isEmpty())) {
-            days = Integer.parseInt(m.group(4));
-          }
-          if ((m.group(5) != null) && (!m.group(5).isEmpty())) {
-            hours = Integer.parseInt(m.group(5));
-          }
-          if ((m.group(6) != null) && (!m.group(6).isEmpty())) {
-            minutes = Integer.parseInt(m.group(6));
-          }
-          if ((m.group(7) != null) && (!m.group(7).isEmpty())) {
-            seconds = Integer.parseInt(m.group(7));
-          }
+        i++;
+      }
+      if (i == digits) {
+        return -1;
+      }
+      if (value > Integer.MAX_VALUE && overflowStart == -1) {
+        overflowStart = digits;
+        overflowEnd = i;
+      }
+      // Units in required order: y, a second y, mo, w, d, h, m, then s or a bare number last.
+      int unit;
+      if (i == end) {
+        unit = 7;
+      }
+      else {
+        switch (time.charAt(i++)) {
+          case 'y':
+            unit = last < 0 ? 0 : 1;
+            break;
+          case 'm':
+            if (i < end && time.charAt(i) == 'o') {
+              i++;
+              unit = 2;
+            }
+            else {
+              unit = 6;
+            }
+            break;
+          case 'w':
+            unit = 3;
+            break;
+          case 'd':
+            unit = 4;
+            break;
+          case 'h':
+            unit = 5;
+            break;
+          case 's':
+            unit = 7;
+            break;
+          default:
+            return -1;
         }
       }
+      if (unit <= last || (unit == 7 && i != end)) {
+        return -1;
+      }
+      last = unit;
+      switch (unit) {
+        case 0:
+          years = value;
+          break;
+        case 2:
+          months = value;
+          break;
+        case 3:
+          weeks = value;
+          break;
+        case 4:
+          days = value;
+          break;
+        case 5:
+          hours = value;
+          break;
+        case 6:
+          minutes = value;
+          break;
+        default:
+          // A repeated year section has always been read as seconds.
+          seconds = value;
+          break;
+      }
+    }
+    if (overflowStart != -1) {
+      throw new NumberFormatException("For input string: \"" + time.subSequence(overflowStart, overflowEnd) + "\"");
     }
-    long val = (years * msyear) + (months * msmonth) + (weeks * msweek) + (days * msday) + (hours * mshour) +
-          (minutes * msminute) + (seconds * mssecond);
+    long val = (years * 31536000000L) + (months * 2628000000L) + (weeks * 604800000L) + (days * 86400000L) +
+          (hours * 3600000L) + (minutes * 60000L) + (seconds * 1000L);
     return val < 0 ? Long.MAX_VALUE - 1 : (years + months + weeks + days + hours + minutes + seconds) > 0 ? val : -1;
   }
 
+  /**
+   * Parses each of the passed time strings to milliseconds.
+   *
+   * @param times the time strings to parse.
+   * @return the millisecond equivalents of the time strings, in the same order. Invalid strings are -1.
+   */
+  public static long[] parseTimeStrs(List<? extends CharSequence> times) {
+    long[] out = new long[times.size()];
+    for (int i = 0; i < out.length; i++) {
+      CharSequence time = times.get(i);
+      out[i] = parseTimeStr(time, 0, time.length());
+    }
+    return out;
+  }
+
   /**
    * Converts the passed milliseconds to a # hour, # minute, # second format. Sections &lt;1 are omitted.
    * Sections &gt;1 are plural.
@@ -349,7 +519,7 @@ public class Time {
    * @return a boolean value representing whether or not the passed string is a valid time string.
    */
   public static boolean isTimeStr(String string) {
-    return string.matches("^([0-9]+y)?([0-9]+y)?([0-9]+mo)?([0-9]+w)?([0-9]+d)?([0-9]+h)?([0-9]+m)?([0-9]+s?)?$");
+    return TIME_STR.matcher(string).matches();
   }
 
   /**
@@ -359,7 +529,7 @@ public class Time {
    * @return Returns a string representation of the current day.
    */
   public static String today() {
-    return millisToDateTime(System.currentTimeMillis(), "yyyy-MM-dd");
+    return day(System.currentTimeMillis()).value;
   }
 
   /**
@@ -368,7 +538,43 @@ public class Time {
    *
    * @return Returns a string representation of the current time.
    */
-  public static String now() {return millisToDateTime(System.currentTimeMillis(), "HH:mm:ss z");}
+  public static String now() {return timestamp(System.currentTimeMillis());}
+
+  /**
+   * Returns a HH:mm:ss z formatted string representation of the passed time.
+   * Uses America/New_York timezone.
+   *
+   * @param millis the time in milliseconds.
+   * @return Returns a string representation of the passed time.
+   */
+  public static String timestamp(long millis) {
+    Cached cached = cachedSecond;
+    if (millis >= cached.from && millis < cached.until) {
+      return cached.value;
+    }
+    long from = Math.floorDiv(millis, 1000L) * 1000L;
+    cached = new Cached(from, from + 1000L, TIME_FORMAT.format(Instant.ofEpochMilli(millis)));
+    cachedSecond = cached;
+    return cached.value;
+  }
+
+  /**
+   * Returns the cached day containing the passed time, rendering and caching it if it is a different day.
+   *
+   * @param millis the time in milliseconds.
+   * @return the day containing the passed time.
+   */
+  private static Cached day(long millis) {
+    Cached cached = cachedDay;
+    if (millis >= cached.from && millis < cached.until) {
+      return cached;
+    }
+    LocalDate date = Instant.ofEpochMilli(millis).atZone(ZONE).toLocalDate();
+    cached = new Cached(date.atStartOfDay(ZONE).toInstant().toEpochMilli(),
+          date.plusDays(1).atStartOfDay(ZONE).toInstant().toEpochMilli(), DAY_FORMAT.format(date));
+    cachedDay = cached;
+    return cached;
+  }
 
   /**
    * Returns the millisecond time of the beginning of the year.
@@ -377,15 +583,7 @@ public class Time {
    * @return the millisecond time of the beginning of the year.
    */
   public static long startOfYear() {
-    GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
-    cal.setTime(new Date(System.currentTimeMillis()));
-    cal.set(Calendar.DAY_OF_YEAR, 1);
-    cal.set(Calendar.HOUR_OF_DAY, 0);
-    cal.set(Calendar.MINUTE, 0);
-    cal.set(Calendar.SECOND, 0);
-    cal.set(Calendar.MILLISECOND, 0);
-    return cal.getTime().getTime();
+    return LocalDate.now(ZONE).withDayOfYear(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
   }
 
   /**
@@ -395,15 +593,7 @@ public class Time {
    * @return the millisecond time of the beginning of the month.
    */
   public static long startOfMonth() {
-    GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
-    cal.setTime(new Date(System.currentTimeMillis()));
-    cal.set(Calendar.DAY_OF_MONTH, 1);
-    cal.set(Calendar.HOUR_OF_DAY, 0);
-    cal.set(Calendar.MINUTE, 0);
-    cal.set(Calendar.SECOND, 0);
-    cal.set(Calendar.MILLISECOND, 0);
-    return cal.getTime().getTime();
+    return LocalDate.now(ZONE).withDayOfMonth(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
   }
 
   /**
@@ -413,15 +603,8 @@ public class Time {
    * @return the millisecond time of the beginning of the week.
    */
   public static long startOfWeek() {
-    GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
-    cal.setTime(new Date(System.currentTimeMillis()));
-    cal.set(Calendar.DAY_OF_WEEK, 1);
-    cal.set(Calendar.HOUR_OF_DAY, 0);
-    cal.set(Calendar.MINUTE, 0);
-    cal.set(Calendar.SECOND, 0);
-    cal.set(Calendar.MILLISECOND, 0);
-    return cal.getTime().getTime();
+    return LocalDate.now(ZONE).with(TemporalAdjusters.previousOrSame(DayOfWeek.SUNDAY)).atStartOfDay(ZONE)
+          .toInstant().toEpochMilli();
   }
 
   /**
@@ -431,14 +614,18 @@ public class Time {
    * @return the millisecond time of the beginning of the day.
    */
   public static long startOfDay() {
-    GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
-    cal.setTime(new Date(System.currentTimeMillis()));
-    cal.set(Calendar.HOUR_OF_DAY, 0);
-    cal.set(Calendar.MINUTE, 0);
-    cal.set(Calendar.SECOND, 0);
-    cal.set(Calendar.MILLISECOND, 0);
-    return cal.getTime().getTime();
+    return day(System.currentTimeMillis()).from;
+  }
+
+  /**
+   * Returns the millisecond time of the beginning of the day containing the passed time.
+   * Uses America/New_York timezone.
+   *
+   * @param millis the time in milliseconds.
+   * @return the millisecond time of the beginning of the day.
+   */
+  public static long startOfDay(long millis) {
+    return day(millis).from;
   }
 
   /**
@@ -452,7 +639,7 @@ public class Time {
    */
   public static long getDayStart(int year, int month, int day) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, month, day, 0, 0, 0);
     cal.set(Calendar.MILLISECOND, 0);
     return cal.getTime().getTime();
@@ -469,7 +656,7 @@ public class Time {
    */
   public static long getDayEnd(int year, int month, int day) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, month, day, 23, 59, 59);
     cal.set(Calendar.MILLISECOND, 999);
     return cal.getTime().getTime();
@@ -485,7 +672,7 @@ public class Time {
    */
   public static long getMonthStart(int year, int month) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, month, 0, 0, 0, 0);
     cal.set(Calendar.MILLISECOND, 0);
     return cal.getTime().getTime();
@@ -501,7 +688,7 @@ public class Time {
    */
   public static long getMonthEnd(int year, int month) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, month, daysInMonth(month) + (month == 1 && isLeapYear(year) ? 1 : 0),
           23, 59, 59);
     cal.set(Calendar.MILLISECOND, 999);
@@ -517,7 +704,7 @@ public class Time {
    */
   public static long getYearStart(int year) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, Calendar.JANUARY, 0, 0, 0, 0);
     cal.set(Calendar.MILLISECOND, 0);
     return cal.getTime().getTime();
@@ -532,7 +719,7 @@ public class Time {
    */
   public static long getYearEnd(int year) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.set(year, Calendar.DECEMBER, 31, 23, 59, 59);
     cal.set(Calendar.MILLISECOND, 999);
     return cal.getTime().getTime();
@@ -546,7 +733,7 @@ public class Time {
    */
   public static int getYear(long millis) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.setTimeInMillis(millis);
     return cal.get(Calendar.YEAR);
   }
@@ -560,7 +747,7 @@ public class Time {
    */
   public static int getMonth(long millis) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.setTimeInMillis(millis);
     return cal.get(Calendar.MONTH);
   }
@@ -573,7 +760,7 @@ public class Time {
    */
   public static int getDay(long millis) {
     GregorianCalendar cal = new GregorianCalendar();
-    cal.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    cal.setTimeZone(TIME_ZONE);
     cal.setTimeInMillis(millis);
     return cal.get(Calendar.DAY_OF_MONTH);
   }
@@ -610,4 +797,19 @@ public class Time {
   public static boolean isLeapYear(int year) {
     return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
   }
+
+  /**
+   * A rendered value and the time range it is valid for.
+   */
+  private static class Cached {
+    private final long from;
+    private final long until;
+    private final String value;
+
+    private Cached(long from, long until, String value) {
+      this.from = from;
+      this.until = until;
+      this.value = value;
+    }
+  }
 }
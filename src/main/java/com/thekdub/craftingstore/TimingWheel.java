@@ -0,0 +1,141 @@
+package com.thekdub.craftingstore;
+
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel.
+ * Six levels of 64 slots each cover 64^6 ticks. Level 0 holds entries due within the next 64 ticks, and each higher
+ * level holds coarser ranges that are cascaded down as time reaches them, so adding an entry and advancing one tick
+ * are O(1) regardless of how many entries are waiting.
+ *
+ * @param <T> the type of value held by the wheel.
+ */
+public class TimingWheel<T> {
+
+  private static final int BITS = 6;
+  private static final int SLOTS = 1 << BITS;
+  private static final int MASK = SLOTS - 1;
+  private static final int LEVELS = 6;
+
+  /**
+   * Entries by level and slot.
+   */
+  private final ArrayList<ArrayList<Entry<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+  /**
+   * The current tick. Every entry due at or before this tick has been expired.
+   */
+  private long current;
+  /**
+   * The number of entries in the wheel.
+   */
+  private int size = 0;
+
+  /**
+   * Creates a new TimingWheel starting at the passed tick.
+   *
+   * @param current the starting tick.
+   */
+  public TimingWheel(long current) {
+    this.current = current;
+    for (int i = 0; i < LEVELS * SLOTS; i++) {
+      slots.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Adds the passed value, due at the passed tick.
+   * Values due at or before the current tick expire on the next advance.
+   *
+   * @param due   the tick the value is due at.
+   * @param value the value.
+   */
+  public void add(long due, T value) {
+    place(new Entry<>(Math.max(due, current + 1), value));
+    size++;
+  }
+
+  /**
+   * Advances the wheel to the passed tick, passing each value that came due to the consumer in due order.
+   *
+   * @param now     the tick to advance to.
+   * @param expired the consumer for values that came due.
+   */
+  public void advance(long now, Consumer<T> expired) {
+    while (current < now) {
+      current++;
+      for (int level = 1; level < LEVELS && ((current >>> (BITS * (level - 1))) & MASK) == 0; level++) {
+        ArrayList<Entry<T>> slot = slot(level, (int) ((current >>> (BITS * level)) & MASK));
+        if (!slot.isEmpty()) {
+          ArrayList<Entry<T>> cascade = new ArrayList<>(slot);
+          slot.clear();
+          cascade.forEach(this::place);
+        }
+      }
+      ArrayList<Entry<T>> slot = slot(0, (int) (current & MASK));
+      if (!slot.isEmpty()) {
+        ArrayList<Entry<T>> due = new ArrayList<>(slot);
+        slot.clear();
+        size -= due.size();
+        due.forEach(entry -> expired.accept(entry.value));
+      }
+    }
+  }
+
+  /**
+   * Passes each waiting value and the tick it is due at to the consumer.
+   *
+   * @param consumer the consumer for waiting values.
+   */
+  public void forEach(BiConsumer<Long, T> consumer) {
+    for (ArrayList<Entry<T>> slot : slots) {
+      for (Entry<T> entry : slot) {
+        consumer.accept(entry.due, entry.value);
+      }
+    }
+  }
+
+  /**
+   * Returns the current tick.
+   *
+   * @return the current tick.
+   */
+  public long getCurrent() {
+    return current;
+  }
+
+  /**
+   * Returns the number of waiting values.
+   *
+   * @return the wheel size.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Places the passed entry in the lowest level whose range covers it.
+   */
+  private void place(Entry<T> entry) {
+    int level = 0;
+    while (level < LEVELS - 1 && (entry.due >>> (BITS * level)) - (current >>> (BITS * level)) >= SLOTS) {
+      level++;
+    }
+    slot(level, (int) ((entry.due >>> (BITS * level)) & MASK)).add(entry);
+  }
+
+  private ArrayList<Entry<T>> slot(int level, int index) {
+    return slots.get(level * SLOTS + index);
+  }
+
+  private static class Entry<T> {
+    private final long due;
+    private final T value;
+
+    private Entry(long due, T value) {
+      this.due = due;
+      this.value = value;
+    }
+  }
+}
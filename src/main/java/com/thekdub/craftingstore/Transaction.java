@@ -1,7 +1,6 @@
 package com.thekdub.craftingstore;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.Objects;
 
@@ -123,8 +122,7 @@ public class Transaction {
   @Override
   public String toString() {
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      return mapper.writeValueAsString(this);
+      return Json.WRITER.writeValueAsString(this);
     } catch (Exception e) {
       CraftingStore.getLog().log("[ERROR] Could not map to JSON! " + e.getMessage());
     }
@@ -0,0 +1,535 @@
+package com.thekdub.craftingstore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An on-disk columnar store of synced payments.
+ * Each field is kept in its own fixed-width column file and read through memory-mapped segments, so aggregate
+ * queries touch only the columns they need and never build Transaction objects. Package, gateway, status, player
+ * and UUID strings are dictionary-encoded, and the player and UUID codes double as secondary indexes.
+ * Timestamps are stored in milliseconds. Payments are appended in ascending ID order and never rewritten.
+ * Player totals leave out payments with an excluded status, as the sales rollups do.
+ */
+public class TransactionStore {
+
+  /**
+   * Timestamps below this are taken to be in seconds.
+   */
+  private static final long SECONDS_LIMIT = 100000000000L;
+
+  private final Column ids;
+  private final Column timestamps;
+  private final Column prices;
+  private final Column packages;
+  private final Column gateways;
+  private final Column statuses;
+  private final Column players;
+  private final Column uuids;
+  private final Column[] columns;
+  private final Dictionary packageNames;
+  private final Dictionary gatewayNames;
+  private final Dictionary statusNames;
+  private final Dictionary playerNames;
+  private final Dictionary uuidNames;
+  /**
+   * Rows by player code.
+   */
+  private final Index playerIndex = new Index();
+  /**
+   * Rows by UUID code.
+   */
+  private final Index uuidIndex = new Index();
+  /**
+   * Payment statuses left out of player totals, in lower case.
+   */
+  private final Set<String> excludedStatuses;
+  /**
+   * Status codes whose payments are left out of player totals.
+   */
+  private final BitSet excludedCodes = new BitSet();
+  /**
+   * The number of stored payments.
+   */
+  private int rows = 0;
+  /**
+   * The highest stored payment ID.
+   */
+  private int maxId = 0;
+
+  /**
+   * Opens the store in the passed folder, counting payments of every status, and repairs any partially written rows.
+   *
+   * @param folder the folder holding the column and dictionary files.
+   * @throws IOException if a column cannot be opened.
+   */
+  public TransactionStore(File folder) throws IOException {
+    this(folder, Collections.emptySet());
+  }
+
+  /**
+   * Opens the store in the passed folder, repairing any partially written rows.
+   *
+   * @param folder           the folder holding the column and dictionary files.
+   * @param excludedStatuses payment statuses left out of player totals, in lower case.
+   * @throws IOException if a column cannot be opened.
+   */
+  public TransactionStore(File folder, Set<String> excludedStatuses) throws IOException {
+    this.excludedStatuses = excludedStatuses;
+    folder.mkdirs();
+    ids = new Column(new File(folder, "id.col"), 4);
+    timestamps = new Column(new File(folder, "timestamp.col"), 8);
+    prices = new Column(new File(folder, "price.col"), 8);
+    packages = new Column(new File(folder, "package.col"), 4);
+    gateways = new Column(new File(folder, "gateway.col"), 4);
+    statuses = new Column(new File(folder, "status.col"), 4);
+    players = new Column(new File(folder, "player.col"), 4);
+    uuids = new Column(new File(folder, "uuid.col"), 4);
+    columns = new Column[]{ids, timestamps, prices, packages, gateways, statuses, players, uuids};
+    packageNames = new Dictionary(new File(folder, "package.dict"));
+    gatewayNames = new Dictionary(new File(folder, "gateway.dict"));
+    statusNames = new Dictionary(new File(folder, "status.dict"));
+    playerNames = new Dictionary(new File(folder, "player.dict"), true);
+    uuidNames = new Dictionary(new File(folder, "uuid.dict"), true);
+    for (int code = 0; code < statusNames.size(); code++) {
+      exclude(code, statusNames.decode(code));
+    }
+    int count = Integer.MAX_VALUE;
+    for (Column column : columns) {
+      count = Math.min(count, column.rows());
+    }
+    for (Column column : columns) {
+      column.truncate(count);
+    }
+    rows = count;
+    for (int row = 0; row < rows; row++) {
+      maxId = Math.max(maxId, ids.getInt(row));
+      playerIndex.add(players.getInt(row), row);
+      uuidIndex.add(uuids.getInt(row), row);
+    }
+  }
+
+  /**
+   * Appends the passed payments, skipping any at or below the highest stored ID.
+   *
+   * @param transactions the payments to append, in ascending ID order.
+   */
+  public synchronized void append(List<Transaction> transactions) {
+    ArrayList<Transaction> fresh = new ArrayList<>(transactions.size());
+    int last = maxId;
+    for (Transaction transaction : transactions) {
+      if (transaction.getId() > last) {
+        fresh.add(transaction);
+        last = transaction.getId();
+      }
+    }
+    if (fresh.isEmpty()) {
+      return;
+    }
+    int n = fresh.size();
+    ByteBuffer idData = ByteBuffer.allocate(n * 4);
+    ByteBuffer timestampData = ByteBuffer.allocate(n * 8);
+    ByteBuffer priceData = ByteBuffer.allocate(n * 8);
+    ByteBuffer packageData = ByteBuffer.allocate(n * 4);
+    ByteBuffer gatewayData = ByteBuffer.allocate(n * 4);
+    ByteBuffer statusData = ByteBuffer.allocate(n * 4);
+    ByteBuffer playerData = ByteBuffer.allocate(n * 4);
+    ByteBuffer uuidData = ByteBuffer.allocate(n * 4);
+    int[] playerCodes = new int[n];
+    int[] uuidCodes = new int[n];
+    try {
+      for (int i = 0; i < n; i++) {
+        Transaction transaction = fresh.get(i);
+        playerCodes[i] = playerNames.encode(transaction.getInGameName());
+        uuidCodes[i] = uuidNames.encode(transaction.getUuid());
+        idData.putInt(transaction.getId());
+        timestampData.putLong(millis(transaction.getTimestamp()));
+        priceData.putDouble(transaction.getPrice());
+        packageData.putInt(packageNames.encode(transaction.getPackageName()));
+        gatewayData.putInt(gatewayNames.encode(transaction.getGateway()));
+        int status = statusNames.encode(transaction.getStatus());
+        exclude(status, transaction.getStatus());
+        statusData.putInt(status);
+        playerData.putInt(playerCodes[i]);
+        uuidData.putInt(uuidCodes[i]);
+      }
+      for (Dictionary dictionary : new Dictionary[]{packageNames, gatewayNames, statusNames, playerNames,
+            uuidNames}) {
+        dictionary.sync();
+      }
+      ids.append(idData);
+      timestamps.append(timestampData);
+      prices.append(priceData);
+      packages.append(packageData);
+      gateways.append(gatewayData);
+      statuses.append(statusData);
+      players.append(playerData);
+      uuids.append(uuidData);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not store payments! " + e.getMessage());
+      try {
+        for (Column column : columns) {
+          column.truncate(rows);
+        }
+      } catch (IOException ignored) {}
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      playerIndex.add(playerCodes[i], rows + i);
+      uuidIndex.add(uuidCodes[i], rows + i);
+    }
+    rows += n;
+    maxId = last;
+  }
+
+  /**
+   * Returns the number of stored payments.
+   *
+   * @return the number of stored payments.
+   */
+  public synchronized int size() {
+    return rows;
+  }
+
+  /**
+   * Returns the highest stored payment ID.
+   *
+   * @return the highest stored payment ID, or 0 if the store is empty.
+   */
+  public synchronized int getMaxId() {
+    return maxId;
+  }
+
+  /**
+   * Returns the total revenue of the passed player, by in-game name.
+   *
+   * @param name the in-game name, case insensitive.
+   * @return the total revenue.
+   */
+  public synchronized double revenueByPlayer(String name) {
+    return sum(playerIndex, playerNames.lookup(name));
+  }
+
+  /**
+   * Returns the total revenue of the passed player, by UUID.
+   *
+   * @param uuid the UUID, case insensitive.
+   * @return the total revenue.
+   */
+  public synchronized double revenueByUuid(String uuid) {
+    return sum(uuidIndex, uuidNames.lookup(uuid));
+  }
+
+  /**
+   * Returns the number of payments of the passed player, by in-game name.
+   *
+   * @param name the in-game name, case insensitive.
+   * @return the number of payments.
+   */
+  public synchronized int countByPlayer(String name) {
+    return count(playerIndex, playerNames.lookup(name));
+  }
+
+  /**
+   * Returns the number of payments of the passed player, by UUID.
+   *
+   * @param uuid the UUID, case insensitive.
+   * @return the number of payments.
+   */
+  public synchronized int countByUuid(String uuid) {
+    return count(uuidIndex, uuidNames.lookup(uuid));
+  }
+
+  /**
+   * Reads the passed stored row back as a Transaction.
+   * Fields that are not stored are left unset.
+   *
+   * @param row the row.
+   * @return the payment.
+   */
+  public synchronized Transaction get(int row) {
+    Transaction transaction = new Transaction();
+    transaction.setId(ids.getInt(row));
+    transaction.setTimestamp(timestamps.getLong(row));
+    transaction.setPrice(prices.getDouble(row));
+    transaction.setPackageName(packageNames.decode(packages.getInt(row)));
+    transaction.setGateway(gatewayNames.decode(gateways.getInt(row)));
+    transaction.setStatus(statusNames.decode(statuses.getInt(row)));
+    transaction.setInGameName(playerNames.decode(players.getInt(row)));
+    transaction.setUuid(uuidNames.decode(uuids.getInt(row)));
+    return transaction;
+  }
+
+  /**
+   * Closes the column files.
+   */
+  public synchronized void close() {
+    for (Column column : columns) {
+      column.close();
+    }
+  }
+
+  /**
+   * Converts the passed API timestamp to milliseconds.
+   *
+   * @param timestamp the timestamp in seconds or milliseconds.
+   * @return the timestamp in milliseconds.
+   */
+  public static long millis(long timestamp) {
+    return timestamp < SECONDS_LIMIT ? timestamp * 1000L : timestamp;
+  }
+
+  /**
+   * Marks the passed status code as excluded if its status is.
+   */
+  private void exclude(int code, String status) {
+    if (code >= 0 && status != null && excludedStatuses.contains(status.toLowerCase())) {
+      excludedCodes.set(code);
+    }
+  }
+
+  private boolean isExcluded(int row) {
+    int code = statuses.getInt(row);
+    return code >= 0 && excludedCodes.get(code);
+  }
+
+  private double sum(Index index, int code) {
+    double sum = 0;
+    int[] rows = index.get(code);
+    for (int i = 0, n = index.count(code); i < n; i++) {
+      if (!isExcluded(rows[i])) {
+        sum += prices.getDouble(rows[i]);
+      }
+    }
+    return sum;
+  }
+
+  private int count(Index index, int code) {
+    int count = index.count(code);
+    if (excludedCodes.isEmpty()) {
+      return count;
+    }
+    int[] rows = index.get(code);
+    for (int i = 0, n = count; i < n; i++) {
+      if (isExcluded(rows[i])) {
+        count--;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A fixed-width column file, read through memory-mapped segments of SEGMENT_SIZE bytes.
+   * Full segments never change, so appending remaps only the last, partial segment and maps any new ones.
+   */
+  private static class Column {
+    /**
+     * The size of a mapped segment, a multiple of every column width so no value spans two segments.
+     */
+    private static final int SEGMENT_SIZE = 1 << 20;
+
+    private final File file;
+    private final int width;
+    private final FileChannel channel;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+
+    private Column(File file, int width) throws IOException {
+      this.file = file;
+      this.width = width;
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+      map();
+    }
+
+    private int rows() throws IOException {
+      return (int) (channel.size() / width);
+    }
+
+    private void truncate(int rows) throws IOException {
+      if (channel.size() != (long) rows * width) {
+        CraftingStore.getLog().log("[WARNING] Repairing payment column " + file.getName() + "!");
+        channel.truncate((long) rows * width);
+        map();
+      }
+    }
+
+    private void append(ByteBuffer data) throws IOException {
+      data.flip();
+      long position = channel.size();
+      while (data.hasRemaining()) {
+        position += channel.write(data, position);
+      }
+      channel.force(false);
+      map();
+    }
+
+    /**
+     * Maps the parts of the file not yet covered by a full segment, and drops segments past its end.
+     */
+    private void map() throws IOException {
+      long size = channel.size();
+      while (!segments.isEmpty() && (segments.get(segments.size() - 1).capacity() < SEGMENT_SIZE ||
+            (long) segments.size() * SEGMENT_SIZE > size)) {
+        segments.remove(segments.size() - 1);
+      }
+      for (long position = (long) segments.size() * SEGMENT_SIZE; position < size; position += SEGMENT_SIZE) {
+        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position)));
+      }
+    }
+
+    private int getInt(int row) {
+      long position = (long) row * width;
+      return segments.get((int) (position / SEGMENT_SIZE)).getInt((int) (position % SEGMENT_SIZE));
+    }
+
+    private long getLong(int row) {
+      long position = (long) row * width;
+      return segments.get((int) (position / SEGMENT_SIZE)).getLong((int) (position % SEGMENT_SIZE));
+    }
+
+    private double getDouble(int row) {
+      long position = (long) row * width;
+      return segments.get((int) (position / SEGMENT_SIZE)).getDouble((int) (position % SEGMENT_SIZE));
+    }
+
+    private void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        CraftingStore.getLog().log("[ERROR] Could not close payment column! " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * An append-only string dictionary. Each string's code is its line number in the dictionary file, and null is -1.
+   */
+  private static class Dictionary {
+    private final File file;
+    private final boolean ignoreCase;
+    private final ArrayList<String> values = new ArrayList<>();
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private final ArrayList<String> unsaved = new ArrayList<>();
+
+    private Dictionary(File file) {
+      this(file, false);
+    }
+
+    private Dictionary(File file, boolean ignoreCase) {
+      this.file = file;
+      this.ignoreCase = ignoreCase;
+      if (!file.exists()) {
+        return;
+      }
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+            StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          codes.putIfAbsent(key(line), values.size());
+          values.add(line);
+        }
+      } catch (IOException e) {
+        CraftingStore.getLog().log("[ERROR] Could not load payment dictionary! " + e.getMessage());
+      }
+    }
+
+    private int encode(String value) {
+      if (value == null) {
+        return -1;
+      }
+      value = value.replace('\n', ' ').replace('\r', ' ');
+      Integer code = codes.get(key(value));
+      if (code == null) {
+        code = values.size();
+        codes.put(key(value), code);
+        values.add(value);
+        unsaved.add(value);
+      }
+      return code;
+    }
+
+    private int lookup(String value) {
+      return value == null ? -1 : codes.getOrDefault(key(value), -1);
+    }
+
+    private String decode(int code) {
+      return code < 0 || code >= values.size() ? null : values.get(code);
+    }
+
+    private int size() {
+      return values.size();
+    }
+
+    private void sync() throws IOException {
+      if (unsaved.isEmpty()) {
+        return;
+      }
+      try (FileOutputStream stream = new FileOutputStream(file, true);
+           BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+        for (String value : unsaved) {
+          writer.write(value);
+          writer.write('\n');
+        }
+        writer.flush();
+        stream.getFD().sync();
+      }
+      unsaved.clear();
+    }
+
+    private String key(String value) {
+      return ignoreCase ? value.toLowerCase() : value;
+    }
+  }
+
+  /**
+   * Rows grouped by dictionary code, as primitive arrays.
+   */
+  private static class Index {
+    private int[][] rows = new int[16][];
+    private int[] counts = new int[16];
+
+    private void add(int code, int row) {
+      if (code < 0) {
+        return;
+      }
+      if (code >= rows.length) {
+        int length = Math.max(code + 1, rows.length * 2);
+        rows = Arrays.copyOf(rows, length);
+        counts = Arrays.copyOf(counts, length);
+      }
+      if (rows[code] == null) {
+        rows[code] = new int[4];
+      }
+      else if (counts[code] == rows[code].length) {
+        rows[code] = Arrays.copyOf(rows[code], rows[code].length * 2);
+      }
+      rows[code][counts[code]++] = row;
+    }
+
+    private int[] get(int code) {
+      return code < 0 || code >= rows.length || rows[code] == null ? new int[0] : rows[code];
+    }
+
+    private int count(int code) {
+      return code < 0 || code >= counts.length ? 0 : counts[code];
+    }
+  }
+}
@@ -0,0 +1,456 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally syncs payments from /v7/payments.
+ * The page order is detected from the first page. Pages listed oldest first are read from the page holding the
+ * cursor and handed to the listeners one at a time. Pages listed newest first are read until one reaches the highest
+ * payment ID seen by a previous sync, spilled to disk, and handed to the listeners from the oldest page. Up to the
+ * configured number of pages are prefetched in parallel on the executor shared with polling. The cursor is persisted
+ * to sync.yml after each page is handed to the listeners, so no payment is skipped and memory is bounded by a page.
+ */
+public class TransactionSync implements Runnable {
+
+  /**
+   * Meta keys that may hold the number of the last page.
+   */
+  private static final String[] LAST_PAGE_KEYS = {"lastPage", "last_page", "totalPages", "pages"};
+
+  /**
+   * The file the cursor is persisted to.
+   */
+  private final File cursorFile;
+  /**
+   * The folder new payments are spilled to while pages listed newest first are read.
+   */
+  private final File spillFolder;
+  /**
+   * The store payments are synced from.
+   */
+  private final StoreClient client;
+  /**
+   * The number of pages fetched in parallel.
+   */
+  private final int concurrency;
+  /**
+   * The number of times a failed page is fetched again before the sync gives up.
+   */
+  private final int retries;
+  /**
+   * The executor pages are prefetched on, shared with polling.
+   */
+  private final Executor executor;
+  /**
+   * Consumers of newly synced payments, oldest first.
+   */
+  private final List<Consumer<List<Transaction>>> listeners = new CopyOnWriteArrayList<>();
+  /**
+   * The highest payment ID seen.
+   */
+  private volatile int cursorId;
+  /**
+   * The timestamp of the highest payment ID seen.
+   */
+  private volatile long cursorTimestamp;
+  /**
+   * The page holding the highest payment ID seen, when pages are listed oldest first.
+   */
+  private int cursorPage;
+  /**
+   * Whether the sync was shut down and should stop reading pages.
+   */
+  private volatile boolean stopped = false;
+
+  /**
+   * Creates a new TransactionSync using the sync settings from the plugin config and loads the saved cursor.
+   *
+   * @param client   the store payments are synced from.
+   * @param executor the executor pages are prefetched on.
+   */
+  public TransactionSync(StoreClient client, Executor executor) {
+    this(client, executor, CraftingStore.getInstance().getConfig());
+  }
+
+  /**
+   * Creates a new TransactionSync using the sync settings from the passed config and loads the saved cursor.
+   *
+   * @param client   the store payments are synced from.
+   * @param executor the executor pages are prefetched on.
+   * @param config   the plugin config.
+   */
+  public TransactionSync(StoreClient client, Executor executor, ConfigurationSection config) {
+    this.client = client;
+    this.executor = executor;
+    this.cursorFile = new File(client.getFolder(), "sync.yml");
+    this.spillFolder = new File(client.getFolder(), "sync");
+    this.concurrency = Math.max(1, config.getInt("sync.concurrency", 4));
+    this.retries = Math.max(0, config.getInt("sync.page-retries", 3));
+    YamlConfiguration cursor = YamlConfiguration.loadConfiguration(cursorFile);
+    this.cursorId = cursor.getInt("cursor.id", 0);
+    this.cursorTimestamp = cursor.getLong("cursor.timestamp", 0);
+    this.cursorPage = cursor.getInt("cursor.page", 1);
+  }
+
+  /**
+   * Registers a consumer for newly synced payments.
+   *
+   * @param listener the consumer, passed each batch of new payments oldest first.
+   */
+  public void addListener(Consumer<List<Transaction>> listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public synchronized void run() {
+    if (stopped) {
+      return;
+    }
+    TransactionList first = fetch(1);
+    if (!first.isSuccess()) {
+      CraftingStore.getLog().log("[FAILURE] Payment sync failed for " + client.getName() + "! " + first.getMessage());
+      return;
+    }
+    int lastPage = lastPage(first.getMeta());
+    int synced = isOldestFirst(first) ? syncOldestFirst(first, lastPage) : syncNewestFirst(first, lastPage);
+    if (synced > 0) {
+      CraftingStore.getLog().log("[SUCCESS] Synced " + synced + " new payments for " + client.getName() + "!");
+    }
+  }
+
+  /**
+   * Syncs pages listed oldest first, starting at the page holding the cursor.
+   * Each page is handed to the listeners as it is read.
+   *
+   * @return the number of payments synced.
+   */
+  private int syncOldestFirst(TransactionList first, int lastPage) {
+    int start = Math.max(1, cursorPage);
+    int[] synced = new int[1];
+    forEachPage(start, lastPage, concurrency, start == 1 ? first : null, (page, list) -> {
+      if (isEmpty(list)) {
+        return false;
+      }
+      ArrayList<Transaction> batch = newer(list.getTransactions());
+      synced[0] += batch.size();
+      deliver(batch, page);
+      return true;
+    });
+    return synced[0];
+  }
+
+  /**
+   * Syncs pages listed newest first. Pages are read until one reaches the cursor, spilling the new payments of each
+   * to disk, then handed to the listeners from the oldest page to the newest, so only one page is held at a time.
+   * If a payment was made while the pages were read in parallel, they are read again one at a time.
+   *
+   * @return the number of payments synced.
+   */
+  private int syncNewestFirst(TransactionList first, int lastPage) {
+    ArrayList<File> spilled = new ArrayList<>();
+    boolean complete = spill(first, lastPage, concurrency, spilled);
+    if (complete && concurrency > 1) {
+      // A payment made while pages were read in parallel can push unread payments onto a page that was already read.
+      // Reading the pages again in order can repeat payments but never skip one.
+      TransactionList check = fetch(1);
+      if (!check.isSuccess()) {
+        CraftingStore.getLog().log("[FAILURE] Payment sync failed for " + client.getName() + "! " +
+              check.getMessage());
+        complete = false;
+      }
+      else if (newestId(check) != newestId(first)) {
+        spilled.clear();
+        complete = spill(check, lastPage(check.getMeta()), 1, spilled);
+      }
+    }
+    int synced = 0;
+    try {
+      for (int i = spilled.size() - 1; complete && i >= 0; i--) {
+        // Payments added while paging shift older ones onto later pages, so a payment may be spilled twice.
+        ArrayList<Transaction> batch = newer(readSpill(spilled.get(i)));
+        synced += batch.size();
+        deliver(batch, cursorPage);
+      }
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not read spilled payments for " + client.getName() + "! " +
+            e.getMessage());
+    }
+    clearSpill();
+    return synced;
+  }
+
+  /**
+   * Reads pages listed newest first until one reaches the cursor, spilling the new payments of each page to its own
+   * file.
+   *
+   * @param first    the first page.
+   * @param lastPage the last page to read.
+   * @param window   the number of pages read in parallel.
+   * @param spilled  the list the spill files are added to, newest page first.
+   * @return whether every needed page was read and spilled.
+   */
+  private boolean spill(TransactionList first, int lastPage, int window, List<File> spilled) {
+    clearSpill();
+    return forEachPage(1, lastPage, window, first, (page, list) -> {
+      if (isEmpty(list)) {
+        return false;
+      }
+      ArrayList<Transaction> fresh = newer(list.getTransactions());
+      if (!fresh.isEmpty()) {
+        File file = new File(spillFolder, page + ".json");
+        spillFolder.mkdirs();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+              StandardCharsets.UTF_8))) {
+          for (Transaction transaction : fresh) {
+            writer.write(Json.WRITER.writeValueAsString(transaction));
+            writer.write('\n');
+          }
+        }
+        spilled.add(file);
+      }
+      return fresh.size() == list.getTransactions().size();
+    });
+  }
+
+  /**
+   * Reads pages in order from the passed page, prefetching up to the passed number of pages in parallel, and passes
+   * each to the consumer until it returns false or the last page was read.
+   *
+   * @param page     the first page to read.
+   * @param lastPage the last page to read.
+   * @param window   the number of pages read in parallel.
+   * @param first    the first page if it was already read, otherwise null.
+   * @param consumer the consumer for each page.
+   * @return whether every page was read and consumed without failing.
+   */
+  private boolean forEachPage(int page, int lastPage, int window, TransactionList first, PageConsumer consumer) {
+    try {
+      if (first != null) {
+        if (!consumer.accept(page, first)) {
+          return true;
+        }
+        page++;
+      }
+      while (page <= lastPage) {
+        int to = (int) Math.min(lastPage, (long) page + window - 1);
+        ArrayList<FutureTask<TransactionList>> tasks = new ArrayList<>();
+        for (int p = page; p <= to; p++) {
+          final int number = p;
+          FutureTask<TransactionList> task = new FutureTask<>(() -> fetch(number));
+          tasks.add(task);
+          try {
+            executor.execute(task);
+          } catch (RejectedExecutionException ignored) {
+            // The page is fetched on this thread below.
+          }
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+          FutureTask<TransactionList> task = tasks.get(i);
+          // Fetch the page on this thread unless a pool thread already started it, so a sync running on the shared
+          // executor never waits for a pool thread that is busy or is this one.
+          task.run();
+          TransactionList list;
+          try {
+            list = task.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tasks.forEach(t -> t.cancel(true));
+            return false;
+          } catch (ExecutionException e) {
+            list = new TransactionList();
+          }
+          if (!list.isSuccess()) {
+            CraftingStore.getLog().log("[FAILURE] Payment sync failed for " + client.getName() + "! " +
+                  list.getMessage());
+            tasks.forEach(t -> t.cancel(true));
+            return false;
+          }
+          if (stopped) {
+            tasks.forEach(t -> t.cancel(true));
+            return false;
+          }
+          if (!consumer.accept(page + i, list)) {
+            tasks.forEach(t -> t.cancel(true));
+            return true;
+          }
+        }
+        page = to + 1;
+      }
+      return true;
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not spill payments for " + client.getName() + "! " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Fetches the passed page, fetching it again up to the configured number of times if the request fails, so one
+   * failed request does not restart a sync of many pages.
+   */
+  private TransactionList fetch(int page) {
+    TransactionList list = client.getTransactions(page);
+    for (int attempt = 0; attempt < retries && !list.isSuccess(); attempt++) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      list = client.getTransactions(page);
+    }
+    return list;
+  }
+
+  /**
+   * Hands the passed payments to the listeners and advances the cursor past them.
+   *
+   * @param batch the new payments, oldest first.
+   * @param page  the page holding the newest of them.
+   */
+  private void deliver(List<Transaction> batch, int page) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    for (Consumer<List<Transaction>> listener : listeners) {
+      listener.accept(batch);
+    }
+    Transaction newest = batch.get(batch.size() - 1);
+    cursorId = newest.getId();
+    cursorTimestamp = newest.getTimestamp();
+    cursorPage = page;
+    saveCursor();
+  }
+
+  /**
+   * Returns the highest payment ID seen.
+   *
+   * @return the cursor payment ID.
+   */
+  public int getCursorId() {
+    return cursorId;
+  }
+
+  /**
+   * Returns the timestamp of the highest payment ID seen.
+   *
+   * @return the cursor timestamp.
+   */
+  public long getCursorTimestamp() {
+    return cursorTimestamp;
+  }
+
+  /**
+   * Stops a running sync after the page being read, before it is handed to the listeners.
+   */
+  public void shutdown() {
+    stopped = true;
+  }
+
+  /**
+   * Returns the payments newer than the cursor, oldest first.
+   */
+  private ArrayList<Transaction> newer(List<Transaction> transactions) {
+    ArrayList<Transaction> fresh = new ArrayList<>();
+    for (Transaction transaction : transactions) {
+      if (transaction.getId() > cursorId) {
+        fresh.add(transaction);
+      }
+    }
+    fresh.sort(Comparator.comparingInt(Transaction::getId));
+    return fresh;
+  }
+
+  private static int newestId(TransactionList list) {
+    return isEmpty(list) ? 0 : list.getTransactions().get(0).getId();
+  }
+
+  private static boolean isEmpty(TransactionList list) {
+    return list.getTransactions() == null || list.getTransactions().isEmpty();
+  }
+
+  /**
+   * Returns whether the passed page lists payments oldest first. Pages with fewer than two payments are read as
+   * newest first, which is equivalent when there is only one page.
+   */
+  private static boolean isOldestFirst(TransactionList list) {
+    List<Transaction> transactions = list.getTransactions();
+    return transactions != null && transactions.size() > 1 &&
+          transactions.get(0).getId() < transactions.get(transactions.size() - 1).getId();
+  }
+
+  private static ArrayList<Transaction> readSpill(File file) throws IOException {
+    ArrayList<Transaction> transactions = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+          StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        transactions.add(Json.TRANSACTION.readValue(line));
+      }
+    }
+    return transactions;
+  }
+
+  private void clearSpill() {
+    File[] files = spillFolder.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  private static int lastPage(Map<String, Integer> meta) {
+    if (meta != null) {
+      for (String key : LAST_PAGE_KEYS) {
+        Integer value = meta.get(key);
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  private void saveCursor() {
+    YamlConfiguration cursor = new YamlConfiguration();
+    cursor.set("cursor.id", cursorId);
+    cursor.set("cursor.timestamp", cursorTimestamp);
+    cursor.set("cursor.page", cursorPage);
+    try {
+      cursor.save(cursorFile);
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not save sync cursor! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Consumer for pages read by forEachPage.
+   */
+  private interface PageConsumer {
+    /**
+     * Consumes the passed page.
+     *
+     * @return whether further pages are needed.
+     * @throws IOException if the page could not be spilled.
+     */
+    boolean accept(int page, TransactionList list) throws IOException;
+  }
+}
@@ -1,28 +1,123 @@
 package com.thekdub.craftingstore;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Watcher implements Runnable {
 
-  private final File dataFile = new File(CraftingStore.getInstance().getDataFolder() + File.separator + "data.yml");
-  private final YamlConfiguration dataStore = YamlConfiguration.loadConfiguration(dataFile);
-  private final HashSet<Command> pending = new HashSet<>();
+  private final HashMap<String, LinkedHashMap<Integer, Command>> pending = new HashMap<>();
+  private final StoreClient client;
+  private final Dispatcher dispatcher;
+  private final Journal journal;
+  private final Acknowledger acknowledger;
+  private final ExpiryScheduler expiries;
+  private final Coordinator coordinator;
+  /**
+   * IDs dispatched since their claims were last finished.
+   */
+  private final ConcurrentLinkedQueue<Integer> finished = new ConcurrentLinkedQueue<>();
+  /**
+   * IDs dispatched on the main thread whose dispatch records are not yet on disk, so they cannot be acknowledged.
+   */
+  private final ConcurrentLinkedQueue<Integer> undurable = new ConcurrentLinkedQueue<>();
+  /**
+   * Writes dispatch records to disk, so the main thread never waits for the disk.
+   */
+  private final ExecutorService persister;
+  /**
+   * Whether a write of dispatch records is queued on the persister and has not started yet.
+   */
+  private final AtomicBoolean persistQueued = new AtomicBoolean();
+  /**
+   * Held while dispatch records are written, so they are on disk once a caller holding it returns.
+   */
+  private final Object persistLock = new Object();
+  /**
+   * Lowercased names of players whose pending commands could not be claimed or were queued as they joined, flushed
+   * on the next poll.
+   */
+  private final Set<String> unflushed = ConcurrentHashMap.newKeySet();
+  private volatile int lastReceived = 0;
+  private volatile long lastSuccess = System.currentTimeMillis();
 
-  public Watcher() {
-    ObjectMapper mapper = new ObjectMapper();
+  public Watcher(StoreClient client) {
+    this(client, CraftingStore.getInstance().getConfig());
+  }
+
+  /**
+   * Creates a new Watcher for the passed store using the settings from the passed config, and recovers its journal.
+   *
+   * @param client the store commands are polled from.
+   * @param config the plugin config.
+   */
+  public Watcher(StoreClient client, ConfigurationSection config) {
+    this.client = client;
+    this.coordinator = Coordinator.create(client, config);
+    this.dispatcher = new Dispatcher(this, config);
+    this.journal = new Journal(client.getFolder(), config.getInt("journal.compact-after", 1000));
+    this.acknowledger = new Acknowledger(dispatcher, journal, client, config);
+    this.expiries = new ExpiryScheduler(client.getFolder(), config);
+    this.persister = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "CraftingStore-Persist");
+      thread.setDaemon(true);
+      return thread;
+    });
+    expiries.load();
+    boolean migrate = journal.isNew();
+    try {
+      journal.recover();
+    } catch (IOException e) {
+      CraftingStore.getLog().log("[ERROR] Could not open journal! " + e.getMessage());
+    }
+    journal.getUnacked().forEach(id -> {
+      dispatcher.restoreCompleted(id);
+      finished.add(id);
+    });
+    journal.getPending().forEach(command -> {
+      if (isClaimable(command)) {
+        submit(command);
+      }
+      else {
+        synchronized (pending) {
+          pending.computeIfAbsent(key(command.getMcName()), k -> new LinkedHashMap<>()).put(command.getId(), command);
+        }
+      }
+    });
+    if (migrate) {
+      migrate();
+    }
+    Metrics.gauge(client.metric("pending_commands"), this::getPendingCount);
+    Metrics.gauge(client.metric("dispatch_queue_size"), dispatcher::size);
+    Metrics.gauge(client.metric("ledger_size"), dispatcher.getLedger()::size);
+    Metrics.gauge(client.metric("acknowledge_retries"), acknowledger::getRetryCount);
+    Metrics.gauge(client.metric("expiries_waiting"), expiries::size);
+    Metrics.gauge(client.metric("last_successful_poll_timestamp_seconds"), () -> lastSuccess / 1000L);
+  }
+
+  private void migrate() {
+    File dataFile = new File(client.getFolder(), "data.yml");
+    if (!dataFile.exists()) {
+      return;
+    }
+    YamlConfiguration dataStore = YamlConfiguration.loadConfiguration(dataFile);
     dataStore.getStringList("pending").stream().map(str -> {
       try {
-        return mapper.readValue(str, Command.class);
+        return Json.COMMAND.<Command>readValue(str);
       } catch (JsonProcessingException e) {
         CraftingStore.getLog().log("[ERROR] Could not map from JSON! " + e.getMessage());
       }
@@ -30,61 +125,272 @@ public class Watcher implements Runnable {
       return new Command(Integer.parseInt(parts[0]), parts[1], parts[2], parts[3], parts[4], parts[5],
             Double.parseDouble(parts[6]), Long.parseLong(parts[7]), Double.parseDouble(parts[8]), parts[9],
             Boolean.parseBoolean(parts[10]));
-    }).forEach(pending::add);
+    }).forEach(command -> {
+      if (isClaimable(command)) {
+        submit(command);
+      }
+      else {
+        addPending(command);
+      }
+    });
+    journal.compact();
+    CraftingStore.getLog().log("[SUCCESS] Migrated pending commands from data.yml to the journal!");
   }
 
   @Override
   public void run() {
-    CommandQueue queue = APIHandler.getCommands();
-    ArrayList<Integer> completed = new ArrayList<>();
-    if (queue.isSuccess()) {
-      CraftingStore.getLog().log("[SUCCESS] Command retrieval completed!");
-      queue.getResult().stream().filter(command -> !pending.contains(command))
-            .forEach(command -> {
-              if (command.getMcName() == null ||
-                    (command.isRequireOnline() && Bukkit.getPlayer(command.getMcName()) != null)) {
-                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.getCommand());
-                CraftingStore.getLog().log("[PROCESSED] " + command);
-                completed.add(command.getId());
-              }
-              else {
-                pending.add(command);
-                CraftingStore.getLog().log("[PENDING] " + command);
-              }
-            });
-      new ArrayList<>(pending).forEach(command -> {
-        if (command.getMcName() == null || Bukkit.getPlayer(command.getMcName()) != null) {
-          Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.getCommand());
-          CraftingStore.getLog().log("[PROCESSED] " + command);
-          completed.add(command.getId());
-          pending.remove(command);
+    finishClaims();
+    for (String mcName : unflushed) {
+      unflushed.remove(mcName);
+      if (PlayerListener.isOnline(mcName)) {
+        flushPending(mcName);
+      }
+    }
+    acknowledge();
+    int[] received = new int[1];
+    APIHandler.Poll poll = client.streamCommands(command -> {
+      if (!isPending(command)) {
+        submit(command);
+        received[0]++;
+      }
+    });
+    lastReceived = received[0];
+    Metrics.increment(client.metric("polls_total{result=\"" + poll.name().toLowerCase() + "\"}"));
+    if (poll != APIHandler.Poll.FAILED) {
+      lastSuccess = System.currentTimeMillis();
+    }
+    if (poll == APIHandler.Poll.UPDATED) {
+      CraftingStore.getLog().log("[SUCCESS] Command retrieval completed for " + client.getName() + "!");
+    }
+    else if (poll == APIHandler.Poll.FAILED) {
+      CraftingStore.getLog().log("[FAILURE] Command retrieval failed for " + client.getName() + "!");
+    }
+    save();
+  }
+
+  private void submit(Command command) {
+    if (!isClaimable(command)) {
+      // Waits unclaimed for its player, so it must not reach the Dispatcher before being claimed by a flush.
+      if (addPending(command)) {
+        CraftingStore.getLog().log("[PENDING] " + command);
+      }
+      if (PlayerListener.isOnline(command.getMcName())) {
+        unflushed.add(key(command.getMcName()));
+      }
+      return;
+    }
+    try {
+      Coordinator.Claim claim = coordinator.claim(command.getId());
+      if (claim != Coordinator.Claim.WON) {
+        if (claim == Coordinator.Claim.HELD) {
+          // Read again on every poll until finished, so the claim is taken over if the owning node stops renewing it.
+          client.invalidateQueueCache();
         }
+        return;
+      }
+    } catch (IOException e) {
+      client.invalidateQueueCache();
+      CraftingStore.getLog().log("[ERROR] Could not claim command " + command.getId() +
+            "! Retrying on the next poll. " + e.getMessage());
+      return;
+    }
+    if (!dispatcher.submit(command)) {
+      client.invalidateQueueCache();
+      CraftingStore.getLog().log("[DEFERRED] Dispatch queue full! " + command);
+    }
+  }
+
+  public void acknowledge() {
+    acknowledger.flush(false);
+  }
+
+  public void acknowledgeAll() {
+    persist();
+    acknowledger.flush(true);
+  }
+
+  boolean addPending(Command command) {
+    synchronized (pending) {
+      if (pending.computeIfAbsent(key(command.getMcName()), k -> new LinkedHashMap<>())
+            .putIfAbsent(command.getId(), command) != null) {
+        return false;
+      }
+    }
+    journal.pending(command);
+    return true;
+  }
+
+  void markDispatched(Command command) {
+    undurable.add(command.getId());
+    finished.add(command.getId());
+  }
+
+  /**
+   * Finishes the claims of the commands dispatched since the last poll, so no other node claims them again even if
+   * they stay unacknowledged for longer than the lease. Claims that cannot be written are retried on the next poll.
+   */
+  private void finishClaims() {
+    ArrayList<Integer> ids = new ArrayList<>();
+    Integer id;
+    while ((id = finished.poll()) != null) {
+      ids.add(id);
+    }
+    if (ids.isEmpty()) {
+      return;
+    }
+    try {
+      coordinator.finish(ids.stream().mapToInt(Integer::intValue).toArray());
+    } catch (IOException e) {
+      finished.addAll(ids);
+      CraftingStore.getLog().log("[ERROR] Could not finish claims of dispatched commands! " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns whether the passed command can be claimed now, which commands waiting for their player cannot.
+   * Goes by the players online as of the last join or quit event, so it is safe off the main thread. The Dispatcher
+   * checks again before dispatching.
+   */
+  private static boolean isClaimable(Command command) {
+    return command.getMcName() == null || !command.isRequireOnline() || PlayerListener.isOnline(command.getMcName());
+  }
+
+  /**
+   * Queues the dispatch records and scheduled revokes of the current tick to be forced to disk off the main thread.
+   * Called by the Dispatcher after each tick that dispatched commands. Their IDs are only acknowledged once the records
+   * are on disk, so a crash cannot lose them and dispatch the commands again or forget their revokes. The ledger is
+   * rebuilt from these records on startup.
+   */
+  void persistDispatched() {
+    if (!persistQueued.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      persister.execute(() -> {
+        persistQueued.set(false);
+        persist();
       });
-      if (completed.size() > 0) {
-        int[] completedIDs = new int[completed.size()];
-        for (int i = 0; i < completed.size(); i++) {
-          completedIDs[i] = completed.get(i);
-        }
-        if (APIHandler.complete(completedIDs)) {
-          CraftingStore.getLog().log("[SUCCESS] ID completion successful! " + Arrays.toString(completedIDs));
+    } catch (RejectedExecutionException e) {
+      // Closing, which persists the remaining records itself.
+      persistQueued.set(false);
+    }
+  }
+
+  /**
+   * Writes the records of every command dispatched so far, forces them and the scheduled revokes to disk, then queues
+   * the commands for acknowledgement.
+   */
+  private void persist() {
+    synchronized (persistLock) {
+      ArrayList<Integer> ids = new ArrayList<>();
+      Integer id;
+      while ((id = undurable.poll()) != null) {
+        ids.add(id);
+      }
+      if (ids.isEmpty()) {
+        return;
+      }
+      ids.forEach(journal::dispatched);
+      journal.force();
+      expiries.save();
+      dispatcher.complete(ids);
+    }
+  }
+
+  public boolean isPending(Command command) {
+    synchronized (pending) {
+      LinkedHashMap<Integer, Command> commands = pending.get(key(command.getMcName()));
+      return commands != null && commands.containsKey(command.getId());
+    }
+  }
+
+  public int flushPending(String mcName) {
+    LinkedHashMap<Integer, Command> commands;
+    synchronized (pending) {
+      commands = pending.remove(key(mcName));
+    }
+    if (commands == null) {
+      return 0;
+    }
+    for (Command command : commands.values()) {
+      try {
+        Coordinator.Claim claim = coordinator.claim(command.getId());
+        if (claim != Coordinator.Claim.WON) {
+          journal.dropped(command.getId());
+          if (claim == Coordinator.Claim.HELD) {
+            // No longer pending here, so it must be seen again by a poll in case the owning node stops renewing it.
+            client.invalidateQueueCache();
+          }
+          continue;
         }
-        else {
-          CraftingStore.getLog().log("[FAILURE] ID completion failed! " + Arrays.toString(completedIDs));
+      } catch (IOException e) {
+        // Another node may not hold the claim, so the command stays pending rather than being dropped.
+        synchronized (pending) {
+          pending.computeIfAbsent(key(mcName), k -> new LinkedHashMap<>()).putIfAbsent(command.getId(), command);
         }
+        unflushed.add(key(mcName));
+        CraftingStore.getLog().log("[ERROR] Could not claim command " + command.getId() +
+              "! Retrying on the next poll. " + e.getMessage());
+        continue;
+      }
+      if (!dispatcher.submit(command)) {
+        addPending(command);
       }
-      save();
     }
-    else {
-      CraftingStore.getLog().log("[FAILURE] Command retrieval failed!");
+    return commands.size();
+  }
+
+  public int getPendingCount() {
+    synchronized (pending) {
+      return pending.values().stream().mapToInt(LinkedHashMap::size).sum();
     }
   }
 
+  private static String key(String mcName) {
+    return mcName == null ? "" : mcName.toLowerCase();
+  }
+
+  public int getLastReceived() {
+    return lastReceived;
+  }
+
+  public long getLastSuccess() {
+    return lastSuccess;
+  }
+
+  public StoreClient getClient() {
+    return client;
+  }
+
+  public ExpiryScheduler getExpiries() {
+    return expiries;
+  }
+
+  public Dispatcher getDispatcher() {
+    return dispatcher;
+  }
+
   public void save() {
-    dataStore.set("pending", pending.stream().map(Command::toString).collect(Collectors.toList()));
+    long start = System.nanoTime();
+    dispatcher.getLedger().save();
+    journal.sync();
+    expiries.save();
+    coordinator.expire();
+    Metrics.time(client.metric("save_seconds"), start);
+  }
+
+  public void close() {
+    persister.shutdown();
     try {
-      dataStore.save(dataFile);
-    } catch (IOException e) {
-      CraftingStore.getLog().log("[ERROR] Could not save datastore! " + e.getMessage());
+      persister.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+    persist();
+    finishClaims();
+    coordinator.close();
+    journal.close();
+    dispatcher.getLedger().save();
+    expiries.save();
   }
 }
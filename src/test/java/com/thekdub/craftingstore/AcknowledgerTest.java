@@ -0,0 +1,120 @@
+package com.thekdub.craftingstore;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AcknowledgerTest {
+
+  @TempDir
+  File folder;
+
+  private MockWebServer server;
+  private Watcher watcher;
+  private Journal journal;
+  private Acknowledger acknowledger;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TestLog.install();
+    server = new MockWebServer();
+    server.start();
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("http.base-url", server.url("/").toString());
+    APIHandler.init(config);
+    config.set("acknowledge.chunk-size", 3);
+    config.set("acknowledge.retry-delay", 1);
+    config.set("acknowledge.max-retry-delay", 5);
+    StoreClient client = new StoreClient("store", "token", new File(folder, "store"));
+    watcher = new Watcher(client, config);
+    journal = new Journal(new File(folder, "acknowledged"), 1000);
+    journal.recover();
+    acknowledger = new Acknowledger(watcher.getDispatcher(), journal, client, config);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    journal.close();
+    watcher.close();
+    APIHandler.shutdown();
+    server.shutdown();
+  }
+
+  @Test
+  void sendsDispatchedIdsInChunks() throws IOException, InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(success(true));
+    }
+    watcher.getDispatcher().complete(Arrays.asList(1, 2, 3, 4, 5, 6, 7));
+    acknowledger.flush(false);
+    assertEquals("[1,2,3]", removeIds());
+    assertEquals("[4,5,6]", removeIds());
+    assertEquals("[7]", removeIds());
+    assertEquals(0, acknowledger.getRetryCount());
+  }
+
+  @Test
+  void retriesChunksTheApiDidNotComplete() throws IOException, InterruptedException {
+    server.enqueue(success(false));
+    server.enqueue(success(true));
+    watcher.getDispatcher().complete(Arrays.asList(1, 2));
+    acknowledger.flush(false);
+    assertEquals("[1,2]", removeIds());
+    assertEquals(2, acknowledger.getRetryCount());
+    acknowledger.flush(false);
+    assertEquals(1, server.getRequestCount());
+    acknowledger.flush(true);
+    assertEquals("[1,2]", removeIds());
+    assertEquals(0, acknowledger.getRetryCount());
+    assertEquals(Long.MAX_VALUE, acknowledger.getNextRetry());
+  }
+
+  @Test
+  void doublesTheRetryDelayUpToTheMaximum() throws IOException, InterruptedException {
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(success(false));
+    }
+    watcher.getDispatcher().complete(Arrays.asList(1));
+    long[] delays = {1000, 2000, 4000, 5000, 5000};
+    for (int i = 0; i < delays.length; i++) {
+      long before = System.currentTimeMillis();
+      acknowledger.flush(i > 0);
+      long after = System.currentTimeMillis();
+      long next = acknowledger.getNextRetry();
+      assertTrue(next >= before + delays[i] && next <= after + delays[i], "retry " + i + " due in " + (next - after));
+      assertEquals("[1]", removeIds());
+    }
+    // Nothing is due yet, so only a forced flush sends the chunk again.
+    server.enqueue(success(true));
+    acknowledger.flush(false);
+    assertEquals(5, server.getRequestCount());
+    acknowledger.flush(true);
+    assertEquals("[1]", removeIds());
+    assertEquals(0, acknowledger.getRetryCount());
+  }
+
+  private static MockResponse success(boolean success) {
+    return new MockResponse().setBody("{\"success\":" + success + ",\"message\":\"Busy\"}");
+  }
+
+  /**
+   * Returns the IDs sent by the next markComplete request.
+   */
+  private String removeIds() throws IOException, InterruptedException {
+    String form = server.takeRequest().getBody().readUtf8();
+    assertTrue(form.startsWith("removeIds="), form);
+    return URLDecoder.decode(form.substring("removeIds=".length()), "UTF-8");
+  }
+}
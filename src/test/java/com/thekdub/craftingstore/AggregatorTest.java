@@ -0,0 +1,110 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregatorTest {
+
+  private int nextId = 1;
+
+  @BeforeAll
+  static void log() {
+    TestLog.install();
+  }
+
+  @Test
+  void sumsTheQuantityArgument() {
+    Aggregator aggregator = new Aggregator(config());
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 1"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 2"));
+    assertTrue(aggregator.add(command("notch"), "GIVE Notch 264 3"));
+    assertEquals(Arrays.asList("give Notch 264 3 [1, 2]", "GIVE Notch 264 3 [3]"), flush(aggregator));
+  }
+
+  @Test
+  void neverSumsDataValues() {
+    Aggregator aggregator = new Aggregator(config());
+    assertTrue(aggregator.add(command("Notch"), "give Notch 35 1 14"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 35 1 14"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 35 1 5"));
+    assertEquals(Arrays.asList("give Notch 35 2 14 [1, 2]", "give Notch 35 1 5 [3]"), flush(aggregator));
+  }
+
+  @Test
+  void keepsPlayersApart() {
+    Aggregator aggregator = new Aggregator(config());
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 1"));
+    assertTrue(aggregator.add(command("jeb_"), "give jeb_ 264 1"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 1"));
+    assertEquals(Arrays.asList("give Notch 264 2 [1, 3]", "give jeb_ 264 1 [2]"), flush(aggregator));
+  }
+
+  @Test
+  void capsMergedQuantitiesAtSixtyFourByDefault() {
+    Aggregator aggregator = new Aggregator(config());
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 40"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 24"));
+    assertTrue(aggregator.add(command("Notch"), "give Notch 264 1"));
+    assertFalse(aggregator.add(command("Notch"), "give Notch 264 65"));
+    assertEquals(2, aggregator.size());
+    assertEquals(Arrays.asList("give Notch 264 64 [1, 2]", "give Notch 264 1 [3]"), flush(aggregator));
+    assertEquals(0, aggregator.size());
+  }
+
+  @Test
+  void skipsCommandsItCannotMerge() {
+    Aggregator aggregator = new Aggregator(config());
+    assertFalse(aggregator.add(command("Notch"), "say Notch 264 1"));
+    assertFalse(aggregator.add(command("Notch"), "give"));
+    assertFalse(aggregator.add(command("Notch"), "give Notch 264"));
+    assertFalse(aggregator.add(command("Notch"), "give Notch 264 one"));
+    assertFalse(aggregator.add(command("Notch"), "give Notch 264 0"));
+    assertFalse(aggregator.add(command(null), "give Notch 264 1"));
+    assertEquals(Collections.emptyList(), flush(aggregator));
+  }
+
+  @Test
+  void mergesNothingUnlessEnabledWithPositions() {
+    YamlConfiguration disabled = config();
+    disabled.set("aggregation.enabled", false);
+    assertFalse(new Aggregator(disabled).add(command("Notch"), "give Notch 264 1"));
+    YamlConfiguration list = new YamlConfiguration();
+    list.set("aggregation.enabled", true);
+    list.set("aggregation.commands", Collections.singletonList("give"));
+    assertFalse(new Aggregator(list).add(command("Notch"), "give Notch 264 1"));
+  }
+
+  private static YamlConfiguration config() {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("aggregation.enabled", true);
+    config.set("aggregation.commands.give", 3);
+    return config;
+  }
+
+  private Command command(String mcName) {
+    return new Command(nextId++, "1", "", mcName, null, "Bundle", 4.99, 499, 0, null, false);
+  }
+
+  /**
+   * Flushes the aggregator, returning each dispatched text followed by the IDs of its commands.
+   */
+  private static List<String> flush(Aggregator aggregator) {
+    ArrayList<String> dispatched = new ArrayList<>();
+    aggregator.flush((text, commands) -> {
+      ArrayList<Integer> ids = new ArrayList<>();
+      commands.forEach(command -> ids.add(command.getId()));
+      dispatched.add(text + " " + ids);
+    });
+    return dispatched;
+  }
+}
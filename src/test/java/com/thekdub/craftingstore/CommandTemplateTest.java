@@ -0,0 +1,107 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandTemplateTest {
+
+  @TempDir
+  File folder;
+
+  @BeforeAll
+  static void log() {
+    TestLog.install();
+  }
+
+  @Test
+  void fillsEachPlaceholder() {
+    Command command = command("{player} {uuid} {package} {price} {coupon} {discount} {payment} {id}");
+    assertEquals("Notch 069a79f4 VIP 4.99 SUMMER 2.5 tbx-123 7", CommandTemplate.expand(command));
+  }
+
+  @Test
+  void matchesPlaceholdersCaseInsensitively() {
+    assertEquals("say Notch Notch", CommandTemplate.expand(command("say {PLAYER} {Player}")));
+  }
+
+  @Test
+  void leavesUnknownPlaceholdersAsTheyAre() {
+    assertEquals("say {foo} Notch {}", CommandTemplate.expand(command("say {foo} {player} {}")));
+    assertEquals("say {Notch}", CommandTemplate.expand(command("say {{player}}")));
+  }
+
+  @Test
+  void leavesUnterminatedBracesAsTheyAre() {
+    assertEquals("say {player", CommandTemplate.expand(command("say {player")));
+    assertEquals("say Notch {id", CommandTemplate.expand(command("say {player} {id")));
+    assertEquals("say } Notch", CommandTemplate.expand(command("say } {player}")));
+  }
+
+  @Test
+  void fillsMissingFieldsWithNothing() {
+    Command command = new Command(7, null, "give {player} 264 1 {coupon}|{uuid}|{payment}", "Notch", null, "VIP",
+          4.99, 499, 0, null, false);
+    assertEquals("give Notch 264 1 ||", CommandTemplate.expand(command));
+    command.setMcName(null);
+    command.setPackageName(null);
+    command.setCommand("say {player}{package}.");
+    assertEquals("say .", CommandTemplate.expand(command));
+  }
+
+  @Test
+  void formatsPricesWithTwoDecimals() {
+    assertEquals("4.99", price(4.99, 499));
+    assertEquals("10.05", price(0, 1005));
+    assertEquals("4.50", price(4.5, 0));
+    assertEquals("0.10", price(0.1, 0));
+    assertEquals("0.00", price(0, 0));
+    assertEquals("-0.05", price(0, -5));
+    Command command = command("{discount}/{discount}");
+    command.setCouponDiscount(0);
+    assertEquals("0.0/0.0", CommandTemplate.expand(command));
+  }
+
+  @Test
+  void returnsCommandsWithoutPlaceholdersAsTheyAre() {
+    Command command = command("say hello");
+    assertSame(command.getCommand(), CommandTemplate.expand(command));
+    command.setCommand(null);
+    assertNull(CommandTemplate.expand(command));
+    assertSame(CommandTemplate.compile("say {player}"), CommandTemplate.compile("say {player}"));
+  }
+
+  @Test
+  void expandsTheRevokeBeforeTheExpiryIsSplitOff() throws IOException {
+    ExpiryScheduler expiries = new ExpiryScheduler(folder, new YamlConfiguration());
+    Command command = command("lp user {player} parent add {package} @expire 30d lp user {player} parent remove " +
+          "{package}");
+    assertEquals("lp user Notch parent add VIP", expiries.prepare(command, CommandTemplate.expand(command)));
+    assertEquals(1, expiries.size());
+    expiries.save();
+    String saved = new String(Files.readAllBytes(new File(folder, "expiries.json").toPath()), StandardCharsets.UTF_8);
+    assertTrue(saved.contains("lp user Notch parent remove VIP"), saved);
+  }
+
+  private static String price(double price, long cents) {
+    Command command = command("{price}");
+    command.setPackagePrice(price);
+    command.setPackagePriceCents(cents);
+    return CommandTemplate.expand(command);
+  }
+
+  private static Command command(String text) {
+    return new Command(7, "tbx-123", text, "Notch", "069a79f4", "VIP", 4.99, 499, 2.5, "SUMMER", false);
+  }
+}
@@ -0,0 +1,91 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryQueueTest {
+
+  private int nextId = 1;
+
+  @Test
+  void takesPlayersInTurnsInTheOrderTheyFirstQueued() {
+    DeliveryQueue queue = new DeliveryQueue(100, new YamlConfiguration());
+    // Notch queues a large backlog first; jeb_ and Dinnerbone must not wait behind all of it.
+    offer(queue, "Notch", "VIP", 4);
+    offer(queue, "jeb_", "VIP", 2);
+    offer(queue, "Dinnerbone", "VIP", 1);
+    offer(queue, "notch", "VIP", 1);
+    assertEquals(Arrays.asList("Notch1", "jeb_5", "Dinnerbone7", "Notch2", "jeb_6", "Notch3", "Notch4", "notch8"),
+          drain(queue));
+  }
+
+  @Test
+  void givesAPlayerANewTurnAfterTheirLaneEmptied() {
+    DeliveryQueue queue = new DeliveryQueue(100, new YamlConfiguration());
+    offer(queue, "Notch", "VIP", 1);
+    offer(queue, "jeb_", "VIP", 2);
+    assertEquals("Notch1", name(queue.poll()));
+    offer(queue, "Notch", "VIP", 1);
+    assertEquals(Arrays.asList("jeb_2", "Notch4", "jeb_3"), drain(queue));
+  }
+
+  @Test
+  void takesHigherPrioritiesFirst() {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("priority.default", 0);
+    config.set("priority.packages.Ranks", 10);
+    config.set("priority.packages.Cosmetics", -5);
+    DeliveryQueue queue = new DeliveryQueue(100, config);
+    offer(queue, "Notch", "Cosmetics", 1);
+    offer(queue, "Notch", "VIP", 2);
+    offer(queue, "jeb_", "ranks", 1);
+    offer(queue, "Notch", "Ranks", 1);
+    assertEquals(10, queue.priority(queue.poll()));
+    assertEquals(Arrays.asList("Notch5", "Notch2", "Notch3", "Notch1"), drain(queue));
+  }
+
+  @Test
+  void refusesCommandsBeyondItsCapacity() {
+    DeliveryQueue queue = new DeliveryQueue(3, new YamlConfiguration());
+    offer(queue, "Notch", "VIP", 3);
+    assertFalse(queue.offer(command("jeb_", "VIP")));
+    assertEquals(3, queue.size());
+    queue.poll();
+    assertTrue(queue.offer(command("jeb_", "VIP")));
+    assertEquals(Arrays.asList("Notch2", "jeb_5", "Notch3"), drain(queue));
+    assertNull(queue.poll());
+    assertEquals(0, queue.size());
+  }
+
+  private void offer(DeliveryQueue queue, String mcName, String packageName, int count) {
+    for (int i = 0; i < count; i++) {
+      assertTrue(queue.offer(command(mcName, packageName)));
+    }
+  }
+
+  private Command command(String mcName, String packageName) {
+    return new Command(nextId++, "1", "say", mcName, null, packageName, 4.99, 499, 0, null, false);
+  }
+
+  private static List<String> drain(DeliveryQueue queue) {
+    ArrayList<String> names = new ArrayList<>();
+    Command command;
+    while ((command = queue.poll()) != null) {
+      names.add(name(command));
+    }
+    return names;
+  }
+
+  private static String name(Command command) {
+    return command.getMcName() + command.getId();
+  }
+}
@@ -0,0 +1,67 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileLockCoordinatorTest {
+
+  @TempDir
+  File folder;
+
+  @BeforeAll
+  static void log() {
+    TestLog.install();
+  }
+
+  @Test
+  void holdsClaimsForOneNodeUntilTheLeasePasses() throws IOException, InterruptedException {
+    FileLockCoordinator first = coordinator("first");
+    FileLockCoordinator second = coordinator("second");
+    assertEquals(Coordinator.Claim.WON, first.claim(1));
+    assertEquals(Coordinator.Claim.WON, first.claim(1));
+    assertEquals(Coordinator.Claim.HELD, second.claim(1));
+    Thread.sleep(1100);
+    assertEquals(Coordinator.Claim.WON, second.claim(1));
+    assertEquals(Coordinator.Claim.HELD, first.claim(1));
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void neverHandsOverFinishedClaims() throws IOException, InterruptedException {
+    FileLockCoordinator first = coordinator("first");
+    FileLockCoordinator second = coordinator("second");
+    assertEquals(Coordinator.Claim.WON, first.claim(1));
+    first.finish(new int[]{1});
+    // An unacknowledged dispatch must not be dispatched again by another node once the lease has passed.
+    Thread.sleep(1100);
+    second.expire();
+    assertEquals(Coordinator.Claim.FINISHED, second.claim(1));
+    assertEquals(Coordinator.Claim.FINISHED, first.claim(1));
+    first.close();
+    second.close();
+  }
+
+  @Test
+  void failsClaimsItCannotRead() throws IOException {
+    FileLockCoordinator coordinator = coordinator("first");
+    coordinator.close();
+    assertThrows(IOException.class, () -> coordinator.claim(1));
+  }
+
+  private FileLockCoordinator coordinator(String node) throws IOException {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("coordination.node-id", node);
+    config.set("coordination.lease-seconds", 1);
+    config.set("polling.max-interval", 0);
+    return new FileLockCoordinator(new File(folder, "claims"), new StoreClient("test", "token", folder), config);
+  }
+}
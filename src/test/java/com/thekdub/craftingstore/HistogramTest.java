@@ -0,0 +1,84 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramTest {
+
+  @Test
+  void reportsSmallValuesExactly() {
+    Histogram histogram = new Histogram(1);
+    for (long value = 0; value < 16; value++) {
+      histogram.record(value);
+    }
+    assertEquals(16, histogram.getCount());
+    assertEquals(120, histogram.getSum(), 0.0);
+    assertEquals(15, histogram.getMax(), 0.0);
+    assertEquals(0, histogram.getQuantile(0), 0.0);
+    assertEquals(7, histogram.getQuantile(0.5), 0.0);
+    assertEquals(15, histogram.getQuantile(1), 0.0);
+  }
+
+  @Test
+  void reportsQuantilesWithinABucket() {
+    Random random = new Random(18);
+    Histogram histogram = new Histogram(1);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.pow(2, random.nextDouble() * 62);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (double quantile : new double[]{0.01, 0.1, 0.5, 0.9, 0.99, 0.999}) {
+      long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+      double actual = histogram.getQuantile(quantile);
+      assertTrue(actual >= expected && actual <= expected * 1.125, quantile + ": " + actual + " vs " + expected);
+    }
+    assertEquals(values[values.length - 1], histogram.getQuantile(1), 0.0);
+    assertEquals(values[values.length - 1], histogram.getMax(), 0.0);
+  }
+
+  @Test
+  void coversTheWholeLongRange() {
+    Histogram histogram = new Histogram(1);
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(-5);
+    assertEquals(2, histogram.getCount());
+    assertEquals(0, histogram.getQuantile(0.5), 0.0);
+    assertEquals((double) Long.MAX_VALUE, histogram.getQuantile(1), 0.0);
+  }
+
+  @Test
+  void scalesReportedValues() {
+    Histogram histogram = new Histogram(1e9);
+    assertEquals(0, histogram.getQuantile(0.5), 0.0);
+    histogram.record(1500000000L);
+    assertEquals(1.5, histogram.getSum(), 1e-9);
+    assertEquals(1.5, histogram.getMax(), 1e-9);
+    assertEquals(1.5, histogram.getQuantile(0.5), 1e-9);
+  }
+
+  @Test
+  void countsConcurrentRecords() throws InterruptedException {
+    Histogram histogram = new Histogram(1);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 100000; i++) {
+          histogram.record(i);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(400000, histogram.getCount());
+    assertEquals(4 * (99999L * 100000L / 2), histogram.getSum(), 0.0);
+  }
+}
@@ -0,0 +1,136 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalTest {
+
+  @TempDir
+  File folder;
+
+  @BeforeAll
+  static void log() {
+    TestLog.install();
+  }
+
+  @Test
+  void replaysPendingDispatchedAcknowledgedAndDropped() throws IOException {
+    Journal journal = new Journal(folder, 1000);
+    assertTrue(journal.isNew());
+    journal.recover();
+    for (int id = 1; id <= 4; id++) {
+      journal.pending(command(id));
+    }
+    journal.dispatched(2);
+    journal.dispatched(3);
+    journal.acknowledged(new int[]{2});
+    journal.dropped(4);
+    journal.sync();
+    journal.close();
+
+    Journal recovered = new Journal(folder, 1000);
+    assertFalse(recovered.isNew());
+    recovered.recover();
+    assertEquals(Collections.singletonList(1), ids(recovered));
+    assertEquals(Collections.singleton(3), recovered.getUnacked());
+    recovered.close();
+  }
+
+  @Test
+  void compactsIntoSnapshotAndStartsEmptyJournal() throws IOException {
+    Journal journal = new Journal(folder, 5);
+    journal.recover();
+    for (int id = 1; id <= 10; id++) {
+      journal.pending(command(id));
+    }
+    for (int id = 1; id <= 4; id++) {
+      journal.dispatched(id);
+    }
+    journal.acknowledged(new int[]{1, 2});
+    journal.sync();
+    assertEquals(0, new File(folder, "pending.journal").length());
+    assertTrue(new File(folder, "pending.snapshot").length() > 0);
+    journal.dispatched(5);
+    journal.close();
+
+    Journal recovered = new Journal(folder, 5);
+    recovered.recover();
+    assertEquals(Arrays.asList(6, 7, 8, 9, 10), ids(recovered));
+    assertEquals(new ArrayList<>(Arrays.asList(3, 4, 5)), new ArrayList<>(recovered.getUnacked()));
+    recovered.close();
+  }
+
+  @Test
+  void keepsAppendingWhenCompactionFails() throws IOException {
+    // A non-empty directory in place of the snapshot cannot be replaced, so the compaction fails.
+    File snapshot = new File(folder, "pending.snapshot");
+    assertTrue(new File(snapshot, "blocked").mkdirs());
+    Journal journal = new Journal(folder, 2);
+    journal.recover();
+    journal.pending(command(1));
+    journal.pending(command(2));
+    journal.sync();
+    assertTrue(new File(folder, "pending.journal").length() > 0);
+    journal.dispatched(2);
+    journal.pending(command(3));
+    journal.sync();
+    assertTrue(new File(snapshot, "blocked").delete());
+    assertTrue(snapshot.delete());
+
+    Journal recovered = new Journal(folder, 2);
+    recovered.recover();
+    assertEquals(Arrays.asList(1, 3), ids(recovered));
+    assertEquals(Collections.singleton(2), recovered.getUnacked());
+    recovered.close();
+    journal.close();
+  }
+
+  @Test
+  void skipsTornAndDamagedRecords() throws IOException {
+    Journal journal = new Journal(folder, 1000);
+    journal.recover();
+    journal.pending(command(1));
+    journal.pending(command(2));
+    journal.dispatched(2);
+    journal.close();
+    try (FileOutputStream out = new FileOutputStream(new File(folder, "pending.journal"), true)) {
+      out.write("D abc\nP {\"id\":3,\"comm".getBytes(StandardCharsets.UTF_8));
+    }
+
+    Journal recovered = new Journal(folder, 1000);
+    recovered.recover();
+    assertEquals(Collections.singletonList(1), ids(recovered));
+    assertEquals(Collections.singleton(2), recovered.getUnacked());
+    recovered.pending(command(5));
+    recovered.close();
+
+    Journal appended = new Journal(folder, 1000);
+    appended.recover();
+    assertEquals(Arrays.asList(1, 5), ids(appended));
+    appended.close();
+  }
+
+  private static List<Integer> ids(Journal journal) {
+    List<Integer> ids = new ArrayList<>();
+    journal.getPending().forEach(command -> ids.add(command.getId()));
+    return ids;
+  }
+
+  private static Command command(int id) {
+    return new Command(id, "p" + id, "give Notch 264 " + id, "Notch", "uuid", "Package", 1.5, 150, 0, null, true);
+  }
+}
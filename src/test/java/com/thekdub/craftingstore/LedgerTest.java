@@ -0,0 +1,77 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerTest {
+
+  private static final long HOUR = 3600000L;
+
+  @TempDir
+  File folder;
+
+  @BeforeAll
+  static void log() {
+    TestLog.install();
+  }
+
+  @Test
+  void keepsEveryIdAcrossRehashes() {
+    Ledger ledger = new Ledger(new File(folder, "ledger.dat"), HOUR);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(ledger.add(i * 7919, now));
+    }
+    assertEquals(10000, ledger.size());
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(ledger.contains(i * 7919));
+      assertFalse(ledger.add(i * 7919, now));
+      assertFalse(ledger.contains(i * 7919 + 1));
+    }
+    assertEquals(10000, ledger.size());
+  }
+
+  @Test
+  void expiresIdsOutsideRetention() {
+    Ledger ledger = new Ledger(new File(folder, "ledger.dat"), HOUR);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 1000; i++) {
+      ledger.add(i, i % 2 == 0 ? now : now - 2 * HOUR);
+    }
+    assertEquals(500, ledger.expire());
+    assertEquals(500, ledger.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 0, ledger.contains(i));
+    }
+    assertTrue(ledger.add(1, now));
+  }
+
+  @Test
+  void savesAndLoadsWithinRetention() {
+    File file = new File(folder, "ledger.dat");
+    Ledger ledger = new Ledger(file, HOUR);
+    long now = System.currentTimeMillis();
+    ledger.add(1, now);
+    ledger.add(2, now - HOUR / 2);
+    ledger.save();
+    assertTrue(file.exists());
+
+    Ledger loaded = new Ledger(file, HOUR);
+    loaded.load();
+    assertEquals(2, loaded.size());
+    assertTrue(loaded.contains(1));
+    assertTrue(loaded.contains(2));
+
+    Ledger shorter = new Ledger(file, HOUR / 4);
+    shorter.load();
+    assertTrue(shorter.contains(1));
+    assertFalse(shorter.contains(2));
+  }
+}
@@ -0,0 +1,106 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoggerTest {
+
+  @TempDir
+  File folder;
+
+  @Test
+  void dropsMessagesWhileTheBufferIsFull() throws IOException {
+    Logger logger = new Logger(config("DROP", 2), folder, null, false);
+    for (int i = 1; i <= 5; i++) {
+      logger.log("message " + i);
+    }
+    logger.start();
+    logger.close();
+    assertEquals(Arrays.asList("[WARNING] Dropped 3 log messages!", "message 1", "message 2"), lines());
+  }
+
+  @Test
+  void keepsOneInEverySampleRateMessagesWhileTheBufferIsFull() throws IOException, InterruptedException {
+    YamlConfiguration config = config("SAMPLE", 2);
+    config.set("logging.sample-rate", 3);
+    Logger logger = new Logger(config, folder, null, false);
+    // The fifth message is the third to find the buffer full, so it waits for the writer instead of being dropped.
+    Thread logging = new Thread(() -> {
+      for (int i = 1; i <= 5; i++) {
+        logger.log("message " + i);
+      }
+    });
+    logging.start();
+    while (logging.getState() != Thread.State.WAITING && logging.isAlive()) {
+      Thread.sleep(1);
+    }
+    logger.start();
+    logging.join();
+    logger.close();
+    List<String> lines = lines();
+    assertTrue(lines.contains("[WARNING] Dropped 2 log messages!"), lines.toString());
+    lines.remove("[WARNING] Dropped 2 log messages!");
+    assertEquals(Arrays.asList("message 1", "message 2", "message 5"), lines);
+  }
+
+  @Test
+  void neverWaitsOnTheMainThreadByDefault() throws IOException {
+    Logger logger = new Logger(config("BLOCK", 1), folder, Thread.currentThread(), false);
+    for (int i = 1; i <= 3; i++) {
+      logger.log("message " + i);
+    }
+    logger.start();
+    logger.close();
+    assertEquals(Arrays.asList("[WARNING] Dropped 2 log messages!", "message 1"), lines());
+  }
+
+  @Test
+  void writesEveryQueuedMessageOnClose() throws IOException {
+    YamlConfiguration config = config("BLOCK", 4096);
+    config.set("logging.flush-lines", 100000);
+    config.set("logging.flush-interval-ms", 60000);
+    Logger logger = new Logger(config, folder);
+    ArrayList<String> messages = new ArrayList<>();
+    for (int i = 1; i <= 1000; i++) {
+      messages.add("message " + i);
+      logger.log("message " + i);
+    }
+    logger.close();
+    // Messages logged once the logger is closed are written immediately.
+    logger.log("late");
+    messages.add("late");
+    assertEquals(messages, lines());
+  }
+
+  private static YamlConfiguration config(String overflow, int bufferSize) {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("logging.overflow", overflow);
+    config.set("logging.buffer-size", bufferSize);
+    return config;
+  }
+
+  /**
+   * Returns the messages written to the log file, without their timestamps.
+   */
+  private List<String> lines() throws IOException {
+    File[] files = new File(folder, "logs").listFiles();
+    assertEquals(1, files.length);
+    ArrayList<String> lines = new ArrayList<>();
+    for (String line : Files.readAllLines(files[0].toPath(), StandardCharsets.UTF_8)) {
+      lines.add(line.substring(line.indexOf(" >> ") + 4));
+    }
+    return lines;
+  }
+}
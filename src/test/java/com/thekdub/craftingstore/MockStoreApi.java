@@ -0,0 +1,221 @@
+package com.thekdub.craftingstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A MockWebServer standing in for the CraftingStore API, serving /v4/queue, /v4/queue/markComplete and /v7/payments.
+ * The latency, error rate and payload size can be changed while it runs. Failed requests change nothing, and every
+ * completion is counted, so tests can check that each command was acknowledged exactly once.
+ */
+final class MockStoreApi implements Closeable {
+
+  private final MockWebServer server = new MockWebServer();
+  /**
+   * Commands not yet marked complete, by ID. Guarded by this.
+   */
+  private final LinkedHashMap<Integer, Command> queue = new LinkedHashMap<>();
+  /**
+   * Payments, oldest first. Guarded by this.
+   */
+  private final ArrayList<Transaction> payments = new ArrayList<>();
+  /**
+   * The number of times each command ID was marked complete.
+   */
+  private final ConcurrentHashMap<Integer, AtomicInteger> completions = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger errors = new AtomicInteger();
+  private volatile long latencyMillis = 0;
+  private volatile double errorRate = 0;
+  private volatile int queueLimit = 100;
+  private volatile int pageSize = 10;
+  private volatile boolean etags = true;
+
+  MockStoreApi() throws IOException {
+    server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return respond(request).setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * Returns the base URL to configure as http.base-url.
+   */
+  String url() {
+    return server.url("/").toString();
+  }
+
+  /**
+   * Sets how long each response is held back.
+   */
+  MockStoreApi latency(long millis) {
+    this.latencyMillis = millis;
+    return this;
+  }
+
+  /**
+   * Sets the fraction of requests answered with HTTP 503 without any effect.
+   */
+  MockStoreApi errorRate(double rate) {
+    this.errorRate = rate;
+    return this;
+  }
+
+  /**
+   * Sets the most commands returned by one /v4/queue response.
+   */
+  MockStoreApi queueLimit(int commands) {
+    this.queueLimit = commands;
+    return this;
+  }
+
+  /**
+   * Sets the number of payments per /v7/payments page.
+   */
+  MockStoreApi pageSize(int payments) {
+    this.pageSize = payments;
+    return this;
+  }
+
+  /**
+   * Sets whether /v4/queue responses carry an ETag, or leave change detection to the response hash.
+   */
+  MockStoreApi etags(boolean etags) {
+    this.etags = etags;
+    return this;
+  }
+
+  synchronized void queue(Command command) {
+    queue.put(command.getId(), command);
+  }
+
+  synchronized void pay(Transaction transaction) {
+    payments.add(transaction);
+  }
+
+  /**
+   * Returns the number of commands not yet marked complete.
+   */
+  synchronized int queued() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the number of times the passed command ID was marked complete.
+   */
+  int completions(int id) {
+    AtomicInteger count = completions.get(id);
+    return count == null ? 0 : count.get();
+  }
+
+  int getRequests() {
+    return requests.get();
+  }
+
+  int getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    server.shutdown();
+  }
+
+  private MockResponse respond(RecordedRequest request) {
+    requests.incrementAndGet();
+    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+      errors.incrementAndGet();
+      return new MockResponse().setResponseCode(503);
+    }
+    try {
+      switch (request.getRequestUrl().encodedPath()) {
+        case "/v4/queue":
+          return commands(request.getHeader("If-None-Match"));
+        case "/v4/queue/markComplete":
+          return complete(request.getBody().readUtf8());
+        case "/v7/payments":
+          return payments(Integer.parseInt(request.getRequestUrl().queryParameter("page")));
+        default:
+          return new MockResponse().setResponseCode(404);
+      }
+    } catch (IOException | RuntimeException e) {
+      return new MockResponse().setResponseCode(500).setBody(String.valueOf(e));
+    }
+  }
+
+  private MockResponse commands(String ifNoneMatch) throws JsonProcessingException {
+    ArrayList<Command> commands = new ArrayList<>();
+    synchronized (this) {
+      for (Command command : queue.values()) {
+        if (commands.size() >= queueLimit) {
+          break;
+        }
+        commands.add(command);
+      }
+    }
+    ArrayList<Integer> ids = new ArrayList<>();
+    commands.forEach(command -> ids.add(command.getId()));
+    String etag = "\"" + Integer.toHexString(ids.hashCode()) + "-" + ids.size() + "\"";
+    if (etags && etag.equals(ifNoneMatch)) {
+      return new MockResponse().setResponseCode(304);
+    }
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("success", true);
+    body.put("result", commands);
+    MockResponse response = new MockResponse().setBody(Json.WRITER.writeValueAsString(body));
+    return etags ? response.setHeader("ETag", etag) : response;
+  }
+
+  private MockResponse complete(String form) throws IOException {
+    String prefix = "removeIds=";
+    if (!form.startsWith(prefix)) {
+      return new MockResponse().setResponseCode(400);
+    }
+    int[] ids = Json.MAPPER.readValue(decode(form.substring(prefix.length())), int[].class);
+    synchronized (this) {
+      for (int id : ids) {
+        queue.remove(id);
+        completions.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+      }
+    }
+    return new MockResponse().setBody("{\"success\":true}");
+  }
+
+  private MockResponse payments(int page) throws JsonProcessingException {
+    List<Transaction> newestFirst;
+    synchronized (this) {
+      newestFirst = new ArrayList<>(payments);
+    }
+    Collections.reverse(newestFirst);
+    int size = pageSize;
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("success", true);
+    body.put("data", newestFirst.subList(Math.min(newestFirst.size(), (page - 1) * size),
+          Math.min(newestFirst.size(), page * size)));
+    body.put("meta", Collections.singletonMap("lastPage", (newestFirst.size() + size - 1) / size));
+    return new MockResponse().setBody(Json.WRITER.writeValueAsString(body));
+  }
+
+  private static String decode(String value) throws UnsupportedEncodingException {
+    return URLDecoder.decode(value, "UTF-8");
+  }
+}
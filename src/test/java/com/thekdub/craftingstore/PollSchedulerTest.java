@@ -0,0 +1,203 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PollSchedulerTest {
+
+  @TempDir
+  File folder;
+
+  private final RecordingExecutor executor = new RecordingExecutor();
+  private FakeWatcher watcher;
+
+  @BeforeEach
+  void setUp() {
+    TestLog.install();
+    watcher = new FakeWatcher(new StoreClient("store", "token", folder));
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+    watcher.close();
+  }
+
+  @Test
+  void backsOffWhileTheQueueStaysEmptyUpToTheMaximum() {
+    PollScheduler poller = poller(config(1, 5, 2, 0), 1);
+    poller.start();
+    for (int i = 0; i < 5; i++) {
+      poller.run();
+    }
+    assertEquals(Arrays.asList(1000L, 2000L, 4000L, 5000L, 5000L, 5000L), executor.delays);
+    assertEquals(100, poller.getInterval());
+  }
+
+  @Test
+  void pollsAtTheMinimumWhileCommandsArrive() {
+    PollScheduler poller = poller(config(1, 5, 2, 0), 1);
+    poller.run();
+    poller.run();
+    watcher.received = 3;
+    poller.run();
+    assertEquals(20, poller.getInterval());
+    watcher.received = 0;
+    poller.run();
+    assertEquals(Arrays.asList(2000L, 4000L, 1000L, 2000L), executor.delays);
+  }
+
+  @Test
+  void clampsOutOfRangeSettings() {
+    PollScheduler poller = poller(config(0, -1, 0.5, 0), 1);
+    poller.run();
+    poller.run();
+    assertEquals(1, poller.getInterval());
+    assertEquals(Arrays.asList(50L, 50L), executor.delays);
+    executor.delays.clear();
+    poller = poller(config(2, 2, 1, 5), 1);
+    for (int i = 0; i < 100; i++) {
+      poller.run();
+    }
+    // A jitter above 1 is clamped to 1, so intervals vary by up to the whole interval but never reach 0.
+    for (long delay : executor.delays) {
+      assertTrue(delay >= 50 && delay <= 4000, delay + " ms");
+    }
+  }
+
+  @Test
+  void jittersEachIntervalWithinTheConfiguredFraction() {
+    PollScheduler poller = poller(config(4, 4, 1, 0.25), 7);
+    for (int i = 0; i < 200; i++) {
+      poller.run();
+    }
+    ArrayList<Long> delays = new ArrayList<>(executor.delays);
+    for (long delay : delays) {
+      assertTrue(delay >= 3000 && delay <= 5000, delay + " ms");
+    }
+    assertTrue(delays.stream().distinct().count() > 10, "too few distinct intervals: " + delays);
+    executor.delays.clear();
+    poller = poller(config(4, 4, 1, 0.25), 7);
+    for (int i = 0; i < 200; i++) {
+      poller.run();
+    }
+    assertEquals(delays, executor.delays);
+  }
+
+  @Test
+  void hurriesTheNextPollToTheMinimumInterval() {
+    PollScheduler poller = poller(config(1, 60, 4, 0), 1);
+    for (int i = 0; i < 3; i++) {
+      poller.run();
+    }
+    assertEquals(1200, poller.getInterval());
+    ScheduledFuture<?> backedOff = executor.futures.get(executor.futures.size() - 1);
+    poller.hurry();
+    assertTrue(backedOff.isCancelled());
+    assertEquals(20, poller.getInterval());
+    long delay = executor.delays.get(executor.delays.size() - 1);
+    assertTrue(delay >= 50 && delay <= 1000, delay + " ms");
+  }
+
+  @Test
+  void hurryingDuringAPollPollsAgainAtTheMinimumInterval() {
+    PollScheduler poller = poller(config(1, 60, 4, 0), 1);
+    poller.run();
+    poller.run();
+    watcher.onRun = poller::hurry;
+    poller.run();
+    assertEquals(Arrays.asList(4000L, 16000L, 1000L), executor.delays);
+  }
+
+  @Test
+  void keepsPollingAfterAPollThrows() {
+    PollScheduler poller = poller(config(1, 5, 2, 0), 1);
+    watcher.onRun = () -> {
+      throw new IllegalStateException("poll failed");
+    };
+    poller.run();
+    poller.run();
+    assertEquals(Arrays.asList(2000L, 4000L), executor.delays);
+  }
+
+  @Test
+  void stopsScheduling() {
+    PollScheduler poller = poller(config(1, 5, 2, 0), 1);
+    poller.start();
+    poller.stop();
+    assertTrue(executor.futures.get(0).isCancelled());
+    poller.run();
+    poller.hurry();
+    assertEquals(1, executor.delays.size());
+  }
+
+  private PollScheduler poller(YamlConfiguration config, long seed) {
+    return new PollScheduler(watcher, executor, config, new Random(seed));
+  }
+
+  private static YamlConfiguration config(long min, long max, double backoff, double jitter) {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("polling.min-interval", min);
+    config.set("polling.max-interval", max);
+    config.set("polling.backoff", backoff);
+    config.set("polling.jitter", jitter);
+    return config;
+  }
+
+  /**
+   * Records the delay of each scheduled poll without ever running it, so the test runs polls itself.
+   */
+  private static class RecordingExecutor extends ScheduledThreadPoolExecutor {
+    private final List<Long> delays = new ArrayList<>();
+    private final List<ScheduledFuture<?>> futures = new ArrayList<>();
+
+    private RecordingExecutor() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      delays.add(unit.toMillis(delay));
+      ScheduledFuture<?> future = super.schedule(() -> {}, 1, TimeUnit.DAYS);
+      futures.add(future);
+      return future;
+    }
+  }
+
+  /**
+   * A Watcher whose polls receive a set number of commands and may run a test action instead of calling the API.
+   */
+  private static class FakeWatcher extends Watcher {
+    private volatile int received = 0;
+    private volatile Runnable onRun = () -> {};
+
+    private FakeWatcher(StoreClient client) {
+      super(client, new YamlConfiguration());
+    }
+
+    @Override
+    public void run() {
+      onRun.run();
+    }
+
+    @Override
+    public int getLastReceived() {
+      return received;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SalesRollupTest {
+
+  private static final long DAY = 86400000L;
+
+  @TempDir
+  File folder;
+
+  private File file;
+
+  @BeforeEach
+  void setUp() {
+    TestLog.install();
+    file = new File(folder, "sales.json");
+  }
+
+  @Test
+  void skipsExcludedStatuses() {
+    SalesRollup rollup = new SalesRollup(file, new YamlConfiguration());
+    ArrayList<Transaction> payments = new ArrayList<>();
+    payments.add(payment(1, 0, "Notch", 10, "DELIVERED"));
+    payments.add(payment(2, 0, "Notch", 20, "REFUNDED"));
+    payments.add(payment(3, 0, "jeb_", 5, "Chargeback"));
+    payments.add(payment(4, 0, "jeb_", 7, null));
+    rollup.add(payments);
+    SalesRollup.Summary summary = rollup.summarize(0, 5);
+    assertEquals(2, summary.getCount());
+    assertEquals(17, summary.getSum(), 0.0001);
+    assertEquals(4, rollup.getLastId());
+    assertEquals(10, summary.getTopBuyers().get(0).getValue(), 0.0001);
+  }
+
+  @Test
+  void honorsConfiguredStatuses() {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("stats.excluded-statuses", Collections.singletonList("pending"));
+    SalesRollup rollup = new SalesRollup(file, config);
+    rollup.add(Collections.singletonList(payment(1, 0, "Notch", 10, "REFUNDED")));
+    rollup.add(Collections.singletonList(payment(2, 0, "Notch", 10, "Pending")));
+    assertEquals(1, rollup.summarize(0, 5).getCount());
+  }
+
+  @Test
+  void appendsOnlyChangedDaysAndCompacts() throws IOException {
+    SalesRollup rollup = new SalesRollup(file, new YamlConfiguration());
+    ArrayList<Transaction> history = new ArrayList<>();
+    for (int id = 1; id <= 30; id++) {
+      history.add(payment(id, id - 1, "Notch", 1, "DELIVERED"));
+    }
+    rollup.add(history);
+    assertEquals(30, lines().size());
+    rollup.add(Collections.singletonList(payment(31, 29, "jeb_", 2, "DELIVERED")));
+    List<String> lines = lines();
+    assertEquals(31, lines.size());
+    assertTrue(lines.get(30).contains("jeb_"));
+    for (int id = 32; id < 62; id++) {
+      rollup.add(Collections.singletonList(payment(id, 29, "jeb_", 2, "DELIVERED")));
+    }
+    assertTrue(lines().size() <= 60, "rollup file was not compacted: " + lines().size());
+    SalesRollup.Summary expected = rollup.summarize(0, 5);
+    SalesRollup reloaded = new SalesRollup(file, new YamlConfiguration());
+    SalesRollup.Summary actual = reloaded.summarize(0, 5);
+    assertEquals(expected.getCount(), actual.getCount());
+    assertEquals(expected.getSum(), actual.getSum(), 0.0001);
+    assertEquals(expected.getTopBuyers(), actual.getTopBuyers());
+    assertEquals(61, reloaded.getLastId());
+  }
+
+  @Test
+  void keepsDaysAppendedAfterATornLine() throws IOException {
+    SalesRollup rollup = new SalesRollup(file, new YamlConfiguration());
+    rollup.add(Collections.singletonList(payment(1, 0, "Notch", 1, "DELIVERED")));
+    try (FileWriter writer = new FileWriter(file, true)) {
+      writer.write("{\"day\":");
+    }
+    rollup = new SalesRollup(file, new YamlConfiguration());
+    rollup.add(Collections.singletonList(payment(2, 1, "Notch", 1, "DELIVERED")));
+    rollup = new SalesRollup(file, new YamlConfiguration());
+    assertEquals(2, rollup.summarize(0, 5).getCount());
+  }
+
+  private List<String> lines() throws IOException {
+    return Files.readAllLines(file.toPath());
+  }
+
+  private static Transaction payment(int id, int day, String player, double price, String status) {
+    Transaction transaction = new Transaction();
+    transaction.setId(id);
+    transaction.setTimestamp(Time.getDayStart(2024, 1, 1) + day * DAY + 3600000L);
+    transaction.setPrice(price);
+    transaction.setPackageName("VIP");
+    transaction.setInGameName(player);
+    transaction.setStatus(status);
+    return transaction;
+  }
+}
@@ -0,0 +1,111 @@
+package com.thekdub.craftingstore;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StoreClientTest {
+
+  @TempDir
+  File folder;
+
+  private MockWebServer server;
+  private StoreClient client;
+  private final List<Integer> read = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TestLog.install();
+    server = new MockWebServer();
+    server.start();
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("http.base-url", server.url("/").toString());
+    APIHandler.init(config);
+    client = new StoreClient("store", "token", folder);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    APIHandler.shutdown();
+    server.shutdown();
+  }
+
+  @Test
+  void sendsTheLastETagAndSkipsTheQueueWhenItIsUnchanged() throws IOException, InterruptedException {
+    server.enqueue(queue(1, 2).setHeader("ETag", "\"a\""));
+    server.enqueue(new MockResponse().setResponseCode(304));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> read.add(command.getId())));
+    assertEquals(APIHandler.Poll.UNCHANGED, client.streamCommands(command -> read.add(command.getId())));
+    assertNull(server.takeRequest().getHeader("If-None-Match"));
+    assertEquals("\"a\"", server.takeRequest().getHeader("If-None-Match"));
+    assertEquals(Arrays.asList(1, 2), read);
+    assertEquals(1, client.getConditionalHits());
+    assertEquals(1, client.getMisses());
+  }
+
+  @Test
+  void skipsAnUnchangedQueueWithoutAnETagByItsHash() throws IOException, InterruptedException {
+    server.enqueue(queue(1, 2));
+    server.enqueue(queue(1, 2));
+    server.enqueue(queue(1, 2, 3));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> read.add(command.getId())));
+    assertEquals(APIHandler.Poll.UNCHANGED, client.streamCommands(command -> read.add(command.getId())));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> read.add(command.getId())));
+    for (int i = 0; i < 3; i++) {
+      assertNull(server.takeRequest().getHeader("If-None-Match"));
+    }
+    assertEquals(Arrays.asList(1, 2, 1, 2, 3), read);
+    assertEquals(1, client.getHashHits());
+    assertEquals(2, client.getMisses());
+  }
+
+  @Test
+  void doesNotCacheAnETagInvalidatedWhileTheQueueWasRead() throws IOException, InterruptedException {
+    server.enqueue(queue(1).setHeader("ETag", "\"a\""));
+    server.enqueue(queue(1).setHeader("ETag", "\"a\""));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> client.invalidateQueueCache()));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> read.add(command.getId())));
+    server.takeRequest();
+    RecordedRequest second = server.takeRequest();
+    assertNull(second.getHeader("If-None-Match"));
+    assertEquals(Collections.singletonList(1), read);
+    assertEquals(0, client.getConditionalHits());
+  }
+
+  @Test
+  void doesNotCacheAHashInvalidatedWhileTheQueueWasRead() throws IOException {
+    server.enqueue(queue(1));
+    server.enqueue(queue(1));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> client.invalidateQueueCache()));
+    assertEquals(APIHandler.Poll.UPDATED, client.streamCommands(command -> read.add(command.getId())));
+    assertEquals(Collections.singletonList(1), read);
+    assertEquals(0, client.getHashHits());
+  }
+
+  private static MockResponse queue(int... ids) throws IOException {
+    ArrayList<Command> commands = new ArrayList<>();
+    for (int id : ids) {
+      commands.add(new Command(id, "100000", "say " + id, "Notch", null, "VIP", 4.99, 499, 0, null, false));
+    }
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("success", true);
+    body.put("result", commands);
+    return new MockResponse().setBody(Json.WRITER.writeValueAsString(body));
+  }
+}
@@ -0,0 +1,29 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * Installs a plugin log writing to a temporary folder, for tests that reach code which logs.
+ */
+final class TestLog {
+
+  private TestLog() {}
+
+  static synchronized void install() {
+    if (CraftingStore.getLog() != null) {
+      return;
+    }
+    try {
+      File folder = Files.createTempDirectory("craftingstore-test").toFile();
+      folder.deleteOnExit();
+      CraftingStore.setLog(new Logger(new YamlConfiguration(), folder));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Installs a stand-in Bukkit server, for tests that reach code which dispatches commands or looks up players.
+ * Dispatched commands are passed to the current command consumer, and only players set online are found, both by
+ * Bukkit and by PlayerListener.
+ */
+final class TestServer {
+
+  private static final Set<String> online = ConcurrentHashMap.newKeySet();
+  private static volatile Consumer<String> commands = command -> {};
+
+  private TestServer() {}
+
+  static synchronized void install() {
+    if (Bukkit.getServer() == null) {
+      Bukkit.setServer(proxy(Server.class, TestServer::server));
+    }
+  }
+
+  /**
+   * Clears the online players and discards dispatched commands.
+   */
+  static void reset() {
+    online.clear();
+    PlayerListener.clearOnline();
+    commands = command -> {};
+  }
+
+  static void setOnline(Collection<String> names) {
+    names.forEach(name -> {
+      online.add(name.toLowerCase());
+      PlayerListener.setOnline(name, true);
+    });
+  }
+
+  static void onCommand(Consumer<String> consumer) {
+    commands = consumer;
+  }
+
+  private static Object server(Method method, Object[] args) {
+    switch (method.getName()) {
+      case "getName":
+        return "TestServer";
+      case "getVersion":
+        return "test";
+      case "getLogger":
+        return Logger.getLogger("TestServer");
+      case "getPlayer":
+      case "getPlayerExact":
+        return online.contains(((String) args[0]).toLowerCase()) ? player((String) args[0]) : null;
+      case "getOnlinePlayers":
+        return online.stream().map(TestServer::player).toArray(Player[]::new);
+      case "getConsoleSender":
+        return proxy(ConsoleCommandSender.class, (m, a) -> m.getName().equals("getName") ? "CONSOLE" : null);
+      case "dispatchCommand":
+        commands.accept((String) args[1]);
+        return true;
+      default:
+        return null;
+    }
+  }
+
+  private static Player player(String name) {
+    return proxy(Player.class, (method, args) -> {
+      switch (method.getName()) {
+        case "getName":
+        case "getDisplayName":
+          return name;
+        case "isOnline":
+          return true;
+        default:
+          return null;
+      }
+    });
+  }
+
+  private static <T> T proxy(Class<T> type, Handler handler) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          default:
+            return type.getSimpleName();
+        }
+      }
+      Object result = handler.invoke(method, args);
+      if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+        // The zero value of the primitive type, such as false or 0.
+        return Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+      }
+      return result;
+    }));
+  }
+
+  private interface Handler {
+    Object invoke(Method method, Object[] args);
+  }
+}
@@ -0,0 +1,133 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeTest {
+
+  private static final String[] PATTERNS = {
+        "MM-dd-yyyy HH:mm", "yyyy-MM-dd", "HH:mm:ss z", "G y yy yyy yyyy", "Y YY YYYY", "M MM MMM MMMM", "w ww W",
+        "D DDD d dd", "F FF", "E EEE EEEE", "u uu", "a h hh K k H", "m mm s ss", "S SS SSS SSSSS", "z zzzz Z X XX XXX",
+        "'at' h 'o''clock' ''", "[yyyy] {MM} #dd", "EEE, d MMM yyyy HH:mm:ss Z"
+  };
+
+  private static final String[] UNITS = {"y", "mo", "w", "d", "h", "m", "s", "", "x", "M", " ", ",", "0"};
+
+  @Test
+  void parsesTimeStrings() {
+    assertEquals(3 * 31536000000L + 5 * 604800000L + 2 * 3600000L + 35 * 60000L, Time.parseTimeStr("3y5w2h35m"));
+    assertEquals(90000L, Time.parseTimeStr("1m30"));
+    assertEquals(30000L, Time.parseTimeStr("30s"));
+    assertEquals(2628000000L, Time.parseTimeStr("1mo"));
+    assertEquals(-1, Time.parseTimeStr(""));
+    assertEquals(-1, Time.parseTimeStr("0s"));
+    assertEquals(-1, Time.parseTimeStr("5m3h"));
+    assertEquals(-1, Time.parseTimeStr("5s3"));
+    assertEquals(Long.MAX_VALUE - 1, Time.parseTimeStr("2147483647y2147483647y"));
+    assertEquals(86400000L, Time.parseTimeStr("@expire 1d revoke", 8, 10));
+    assertArrayEquals(new long[]{60000L, -1, 3600000L}, Time.parseTimeStrs(Arrays.asList("1m", "m1", "1h")));
+  }
+
+  @Test
+  void parsesLikeTheRegexParser() {
+    Random random = new Random(13);
+    for (int i = 0; i < 200000; i++) {
+      StringBuilder time = new StringBuilder();
+      int sections = random.nextInt(5);
+      for (int j = 0; j < sections; j++) {
+        if (random.nextInt(10) > 0) {
+          // Occasionally append a section too large for an int.
+          time.append(random.nextInt(10) == 0 ? (random.nextInt() & Integer.MAX_VALUE) + "" + random.nextInt(10) :
+                String.valueOf(random.nextInt(100)));
+        }
+        time.append(UNITS[random.nextInt(UNITS.length)]);
+      }
+      assertParsesLikeRegex(time.toString());
+    }
+    for (String time : new String[]{"1y1y", "1y2y3mo", "2147483648s", "1y2147483648", "99999999999y1x", "1mo1m1s"}) {
+      assertParsesLikeRegex(time);
+    }
+  }
+
+  private static void assertParsesLikeRegex(String time) {
+    String expected;
+    try {
+      expected = String.valueOf(regexParseTimeStr(time));
+    } catch (NumberFormatException e) {
+      expected = e.toString();
+    }
+    String actual;
+    try {
+      actual = String.valueOf(Time.parseTimeStr(time));
+    } catch (NumberFormatException e) {
+      actual = e.toString();
+    }
+    assertEquals(expected, actual, time);
+  }
+
+  /**
+   * The regex parser Time.parseTimeStr replaced.
+   */
+  private static long regexParseTimeStr(String time) {
+    if (!time.matches("^([0-9]+y)?([0-9]+y)?([0-9]+mo)?([0-9]+w)?([0-9]+d)?([0-9]+h)?([0-9]+m)?([0-9]+s?)?$")) {
+      return -1;
+    }
+    Pattern timePattern = Pattern.compile("(?:([0-9]+)\\s*y[a-z]*[,\\s]*)?(?:([0-9]+)\\s*mo[a-z]*[,\\s]*)?(?:" +
+          "([0-9]+)\\s*w[a-z]*[,\\s]*)?(?:([0-9]+)\\s*d[a-z]*[,\\s]*)?(?:([0-9]+)\\s*h[a-z]*[,\\s]*)?(?:(" +
+          "[0-9]+)\\s*m[a-z]*[,\\s]*)?(?:([0-9]+)\\s*(?:s[a-z]*)?)?", 2);
+    Matcher m = timePattern.matcher(time);
+    long[] values = new long[7];
+    long[] units = {31536000000L, 2628000000L, 604800000L, 86400000L, 3600000L, 60000L, 1000L};
+    while (m.find()) {
+      for (int i = 1; i <= 7; i++) {
+        if (m.group(i) != null && !m.group(i).isEmpty()) {
+          values[i - 1] = Integer.parseInt(m.group(i));
+        }
+      }
+    }
+    long val = 0;
+    long sum = 0;
+    for (int i = 0; i < 7; i++) {
+      val += values[i] * units[i];
+      sum += values[i];
+    }
+    return val < 0 ? Long.MAX_VALUE - 1 : sum > 0 ? val : -1;
+  }
+
+  @Test
+  void formatsLikeSimpleDateFormat() {
+    Random random = new Random(12);
+    for (String pattern : PATTERNS) {
+      SimpleDateFormat expected = new SimpleDateFormat(pattern);
+      expected.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+      for (int i = 0; i < 500; i++) {
+        long millis = (long) (random.nextDouble() * 4102444800000L);
+        assertEquals(expected.format(new Date(millis)), Time.millisToDateTime(millis, pattern),
+              pattern + " at " + millis);
+      }
+    }
+  }
+
+  @Test
+  void formatsTodayAndNowLikeSimpleDateFormat() {
+    SimpleDateFormat day = new SimpleDateFormat("yyyy-MM-dd");
+    SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss z");
+    day.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    time.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+    long millis = 1699164000000L;
+    for (int i = 0; i < 48 * 60; i++, millis += 60000L) {
+      assertEquals(time.format(new Date(millis)), Time.timestamp(millis));
+      assertEquals(day.format(new Date(Time.startOfDay(millis))), day.format(new Date(millis)));
+    }
+  }
+}
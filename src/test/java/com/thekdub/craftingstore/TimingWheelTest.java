@@ -0,0 +1,59 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+  @Test
+  void expiresInDueOrderAcrossCascades() {
+    Random random = new Random(14);
+    long start = 1700000000L;
+    TimingWheel<Long> wheel = new TimingWheel<>(start);
+    TreeMap<Long, Integer> reference = new TreeMap<>();
+    long now = start;
+    for (int round = 0; round < 2000; round++) {
+      for (int i = random.nextInt(20); i > 0; i--) {
+        // Spread dues over every level, including some already due.
+        long due = now - 5 + (long) Math.pow(64, random.nextDouble() * 5);
+        wheel.add(due, due);
+        reference.merge(Math.max(due, now + 1), 1, Integer::sum);
+      }
+      long to = now + (random.nextInt(4) == 0 ? random.nextInt(300000) : random.nextInt(64));
+      ArrayList<Long> expired = new ArrayList<>();
+      wheel.advance(to, expired::add);
+      long last = Long.MIN_VALUE;
+      for (long due : expired) {
+        long effective = Math.max(due, now + 1);
+        assertTrue(effective <= to, "expired early");
+        assertTrue(effective >= last, "expired out of order");
+        last = effective;
+        reference.merge(effective, -1, (a, b) -> a + b == 0 ? null : a + b);
+      }
+      now = to;
+      assertTrue(reference.isEmpty() || reference.firstKey() > now, "missed an expiry");
+      assertEquals(reference.values().stream().mapToInt(Integer::intValue).sum(), wheel.size());
+      assertEquals(now, wheel.getCurrent());
+    }
+  }
+
+  @Test
+  void keepsEntriesBeyondTheTopLevel() {
+    TimingWheel<String> wheel = new TimingWheel<>(0);
+    long far = 1L << 40;
+    wheel.add(far, "far");
+    ArrayList<String> expired = new ArrayList<>();
+    wheel.advance(1L << 20, expired::add);
+    assertTrue(expired.isEmpty());
+    long[] due = new long[1];
+    wheel.forEach((tick, value) -> due[0] = tick);
+    assertEquals(far, due[0]);
+    assertEquals(1, wheel.size());
+  }
+}
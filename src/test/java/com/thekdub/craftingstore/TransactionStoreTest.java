@@ -0,0 +1,142 @@
+package com.thekdub.craftingstore;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TransactionStoreTest {
+
+  @TempDir
+  File folder;
+
+  @BeforeEach
+  void setUp() {
+    TestLog.install();
+  }
+
+  @Test
+  void answersPlayerQueriesFromTheIndexes() throws IOException {
+    TransactionStore store = new TransactionStore(folder);
+    store.append(payments(1, 1000));
+    assertEquals(1000, store.size());
+    assertEquals(1000, store.getMaxId());
+    assertEquals(100, store.countByPlayer("player3"));
+    assertEquals(100 * 3.0, store.revenueByPlayer("PLAYER3"), 0.0001);
+    assertEquals(100, store.countByUuid(uuid(3).toUpperCase()));
+    assertEquals(100 * 3.0, store.revenueByUuid(uuid(3)), 0.0001);
+    assertEquals(0, store.countByPlayer("Nobody"));
+    assertEquals(0, store.revenueByPlayer(null), 0.0);
+    store.close();
+  }
+
+  @Test
+  void skipsStoredIdsAndKeepsRowsAcrossReopens() throws IOException {
+    TransactionStore store = new TransactionStore(folder);
+    store.append(payments(1, 10));
+    store.append(payments(5, 20));
+    store.close();
+    store = new TransactionStore(folder);
+    assertEquals(20, store.size());
+    assertEquals(20, store.getMaxId());
+    Transaction transaction = store.get(6);
+    assertEquals(7, transaction.getId());
+    assertEquals("Player7", transaction.getInGameName());
+    assertEquals("Package 7", transaction.getPackageName());
+    assertEquals(TransactionStore.millis(1700000007L), transaction.getTimestamp());
+    assertNull(transaction.getGateway());
+    assertEquals(2, store.countByPlayer("player7"));
+    store.close();
+  }
+
+  @Test
+  void truncatesPartiallyWrittenRows() throws IOException {
+    TransactionStore store = new TransactionStore(folder);
+    store.append(payments(1, 10));
+    store.close();
+    try (RandomAccessFile file = new RandomAccessFile(new File(folder, "price.col"), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    store = new TransactionStore(folder);
+    assertEquals(9, store.size());
+    store.append(payments(10, 11));
+    assertEquals(11, store.size());
+    assertEquals(11, store.get(10).getId());
+    assertEquals(10, store.get(9).getId());
+    store.close();
+  }
+
+  @Test
+  void leavesExcludedStatusesOutOfPlayerTotals() throws IOException {
+    ArrayList<Transaction> payments = payments(1, 20);
+    payments.get(2).setStatus("Refunded");
+    payments.get(3).setStatus(null);
+    payments.get(13).setStatus("chargeback");
+    TransactionStore store = new TransactionStore(folder, new HashSet<>(Arrays.asList("refunded", "chargeback")));
+    store.append(payments);
+    assertEquals(1, store.countByPlayer("player3"));
+    assertEquals(3.0, store.revenueByPlayer("player3"), 0.0001);
+    assertEquals(1, store.countByUuid(uuid(4)));
+    assertEquals(4.0, store.revenueByUuid(uuid(4)), 0.0001);
+    store.close();
+    // Statuses stored before a reopen stay excluded.
+    store = new TransactionStore(folder, new HashSet<>(Arrays.asList("refunded", "chargeback")));
+    assertEquals(1, store.countByPlayer("player3"));
+    assertEquals(20, store.size());
+    store.close();
+    store = new TransactionStore(folder);
+    assertEquals(2, store.countByPlayer("player3"));
+    assertEquals(6.0, store.revenueByPlayer("player3"), 0.0001);
+    store.close();
+  }
+
+  @Test
+  void readsRowsAcrossMappedSegments() throws IOException {
+    // Eight-byte columns pass a one megabyte segment at row 131072.
+    TransactionStore store = new TransactionStore(folder);
+    for (int from = 1; from <= 140000; from += 7000) {
+      store.append(payments(from, from + 6999));
+    }
+    assertEquals(140000, store.size());
+    assertEquals(14000, store.countByPlayer("player7"));
+    assertEquals(14000 * 7.0, store.revenueByPlayer("player7"), 0.0001);
+    store.close();
+    store = new TransactionStore(folder);
+    for (int row : new int[]{131071, 131072, 139999}) {
+      assertEquals(row + 1, store.get(row).getId());
+      assertEquals(TransactionStore.millis(1700000000L + row + 1), store.get(row).getTimestamp());
+    }
+    store.close();
+  }
+
+  static ArrayList<Transaction> payments(int from, int to) {
+    ArrayList<Transaction> payments = new ArrayList<>();
+    for (int id = from; id <= to; id++) {
+      Transaction transaction = new Transaction();
+      transaction.setId(id);
+      transaction.setTimestamp(1700000000L + id);
+      transaction.setPrice(id % 10);
+      transaction.setPackageName("Package " + id % 20);
+      transaction.setInGameName("Player" + id % 10);
+      transaction.setUuid(uuid(id % 10));
+      transaction.setStatus("DELIVERED");
+      payments.add(transaction);
+    }
+    return payments;
+  }
+
+  private static String uuid(int player) {
+    char[] hex = new char[32];
+    Arrays.fill(hex, Character.forDigit(player % 16, 16));
+    return new String(hex);
+  }
+}
@@ -0,0 +1,187 @@
+package com.thekdub.craftingstore;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionSyncTest {
+
+  private static final int PAGE_SIZE = 10;
+
+  @TempDir
+  File folder;
+
+  private MockWebServer server;
+  private ExecutorService executor = Executors.newFixedThreadPool(3);
+  private final ArrayList<Transaction> payments = new ArrayList<>();
+  private volatile boolean newestFirst = true;
+  private volatile int addOnPage = -1;
+  private final CountDownLatch added = new CountDownLatch(1);
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TestLog.install();
+    server = new MockWebServer();
+    server.setDispatcher(new okhttp3.mockwebserver.Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+        return page(Integer.parseInt(request.getRequestUrl().queryParameter("page")));
+      }
+    });
+    server.start();
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("http.base-url", server.url("/").toString());
+    APIHandler.init(config);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    executor.shutdownNow();
+    APIHandler.shutdown();
+    server.shutdown();
+  }
+
+  @Test
+  void syncsNewestFirstPagesOldestFirst() {
+    checkSync(true);
+  }
+
+  @Test
+  void syncsOldestFirstPagesOneAtATime() {
+    checkSync(false);
+  }
+
+  @Test
+  void keepsPaymentsShiftedByNewOnesDuringSync() {
+    add(95);
+    // Page 3 is served after the new payments arrive and page 4 before, so five unread payments move onto page 4.
+    addOnPage = 3;
+    ArrayList<Integer> seen = new ArrayList<>();
+    TransactionSync sync = sync(seen, new ArrayList<>());
+    sync.run();
+    sync.run();
+    assertEquals(ids(1, 100), seen);
+    sync.shutdown();
+  }
+
+  @Test
+  void syncsOnTheOnlyThreadOfItsExecutor() throws InterruptedException, ExecutionException, TimeoutException {
+    // Polls and syncs share one executor, so a sync must not wait for page fetches queued behind itself.
+    executor.shutdownNow();
+    executor = Executors.newSingleThreadExecutor();
+    add(95);
+    ArrayList<Integer> seen = new ArrayList<>();
+    TransactionSync sync = sync(seen, new ArrayList<>());
+    executor.submit(sync).get(30, TimeUnit.SECONDS);
+    assertEquals(ids(1, 95), seen);
+  }
+
+  private void checkSync(boolean newestFirst) {
+    this.newestFirst = newestFirst;
+    add(95);
+    ArrayList<Integer> seen = new ArrayList<>();
+    ArrayList<Integer> batches = new ArrayList<>();
+    TransactionSync sync = sync(seen, batches);
+    sync.run();
+    assertEquals(ids(1, 95), seen);
+    assertTrue(batches.stream().allMatch(size -> size <= PAGE_SIZE), "batches larger than a page: " + batches);
+    add(12);
+    sync.run();
+    sync.run();
+    assertEquals(ids(1, 107), seen);
+    assertEquals(107, sync.getCursorId());
+    sync.shutdown();
+    TransactionSync reloaded = sync(seen, batches);
+    assertEquals(107, reloaded.getCursorId());
+    reloaded.run();
+    assertEquals(ids(1, 107), seen);
+    reloaded.shutdown();
+    String[] spilled = new File(folder, "sync").list();
+    assertTrue(spilled == null || spilled.length == 0);
+  }
+
+  private TransactionSync sync(List<Integer> seen, List<Integer> batches) {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("sync.concurrency", 3);
+    TransactionSync sync = new TransactionSync(new StoreClient("test", "token", folder), executor, config);
+    sync.addListener(batch -> {
+      batches.add(batch.size());
+      batch.forEach(transaction -> seen.add(transaction.getId()));
+    });
+    return sync;
+  }
+
+  private synchronized void add(int count) {
+    for (int i = 0; i < count; i++) {
+      Transaction transaction = new Transaction();
+      transaction.setId(payments.size() + 1);
+      transaction.setPrice(4.99);
+      transaction.setPackageName("VIP");
+      transaction.setInGameName("Notch");
+      transaction.setStatus("DELIVERED");
+      transaction.setTimestamp(1700000000L + payments.size() * 60L);
+      payments.add(transaction);
+    }
+  }
+
+  private MockResponse page(int page) {
+    if (page == addOnPage) {
+      try {
+        added.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    ArrayList<Transaction> ordered;
+    synchronized (this) {
+      ordered = new ArrayList<>(payments);
+      if (page == addOnPage + 1) {
+        addOnPage = -1;
+        add(5);
+        added.countDown();
+      }
+    }
+    if (newestFirst) {
+      Collections.reverse(ordered);
+    }
+    HashMap<String, Object> body = new HashMap<>();
+    body.put("success", true);
+    body.put("data", ordered.subList(Math.min(ordered.size(), (page - 1) * PAGE_SIZE),
+          Math.min(ordered.size(), page * PAGE_SIZE)));
+    body.put("meta", Collections.singletonMap("lastPage", (ordered.size() + PAGE_SIZE - 1) / PAGE_SIZE));
+    try {
+      return new MockResponse().setBody(Json.WRITER.writeValueAsString(body));
+    } catch (IOException e) {
+      return new MockResponse().setResponseCode(500);
+    }
+  }
+
+  private static ArrayList<Integer> ids(int from, int to) {
+    ArrayList<Integer> ids = new ArrayList<>();
+    for (int id = from; id <= to; id++) {
+      ids.add(id);
+    }
+    return ids;
+  }
+}
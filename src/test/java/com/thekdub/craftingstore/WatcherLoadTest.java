@@ -0,0 +1,210 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Drives Watchers through thousands of commands served by a slow, failing mock API, polling on background threads and
+ * dispatching in simulated server ticks, and checks that every command is dispatched and acknowledged exactly once.
+ * Prints the throughput of each run. Tagged load, so it runs with gradle loadTest rather than gradle test.
+ */
+@Tag("load")
+class WatcherLoadTest {
+
+  private static final int COMMANDS = 5000;
+  private static final int PLAYERS = 50;
+  private static final long TIMEOUT_MILLIS = 120000;
+
+  @TempDir
+  File folder;
+
+  private MockStoreApi api;
+  /**
+   * The number of times each command ID was dispatched.
+   */
+  private final ConcurrentHashMap<Integer, AtomicInteger> dispatched = new ConcurrentHashMap<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TestLog.install();
+    TestServer.install();
+    TestServer.onCommand(text -> dispatched.computeIfAbsent(
+          Integer.parseInt(text.substring(text.lastIndexOf(' ') + 1)), id -> new AtomicInteger()).incrementAndGet());
+    api = new MockStoreApi();
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("http.base-url", api.url());
+    APIHandler.init(config);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    TestServer.reset();
+    APIHandler.shutdown();
+    api.close();
+  }
+
+  @Test
+  void dispatchesEachCommandOnceFromSlowFailingApi() throws InterruptedException {
+    api.latency(2).errorRate(0.05).queueLimit(500);
+    Watcher watcher = new Watcher(new StoreClient("load", "token", folder), config(null));
+    run("one node, 5% errors", Arrays.asList(watcher));
+    check();
+  }
+
+  @Test
+  void dispatchesEachCommandOnceWithoutETags() throws InterruptedException {
+    api.latency(1).errorRate(0.02).queueLimit(250).etags(false);
+    Watcher watcher = new Watcher(new StoreClient("load", "token", folder), config(null));
+    run("one node, no ETags", Arrays.asList(watcher));
+    check();
+  }
+
+  /**
+   * Both nodes run in this process, so they contend for the claim directory through failed in-process locks rather
+   * than waiting on each other's file locks. WatcherTest covers taking over the claims of a crashed node.
+   */
+  @Test
+  void twoNodesSharingTheQueueDispatchEachCommandOnce() throws InterruptedException {
+    api.latency(2).errorRate(0.05).queueLimit(500);
+    Watcher first = new Watcher(new StoreClient("load", "token", new File(folder, "first")), config("first"));
+    Watcher second = new Watcher(new StoreClient("load", "token", new File(folder, "second")), config("second"));
+    run("two nodes, 5% errors", Arrays.asList(first, second));
+    check();
+  }
+
+  @Test
+  void syncsEveryPaymentFromSlowFailingApi() {
+    api.latency(1).errorRate(0.05).pageSize(50);
+    for (int id = 1; id <= COMMANDS; id++) {
+      Transaction transaction = new Transaction();
+      transaction.setId(id);
+      transaction.setPrice(4.99);
+      transaction.setPackageName("VIP");
+      transaction.setInGameName("Player" + (id % PLAYERS));
+      transaction.setStatus("DELIVERED");
+      transaction.setTimestamp(1700000000L + id * 60L);
+      api.pay(transaction);
+    }
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("sync.concurrency", 4);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    TransactionSync sync = new TransactionSync(new StoreClient("load", "token", folder), executor, config);
+    ConcurrentHashMap<Integer, AtomicInteger> seen = new ConcurrentHashMap<>();
+    sync.addListener(batch -> batch.forEach(transaction ->
+          seen.computeIfAbsent(transaction.getId(), id -> new AtomicInteger()).incrementAndGet()));
+    long start = System.nanoTime();
+    for (int run = 0; run < 100 && sync.getCursorId() < COMMANDS; run++) {
+      sync.run();
+    }
+    report("payment sync, 5% errors", COMMANDS, start);
+    executor.shutdownNow();
+    assertEquals(COMMANDS, sync.getCursorId());
+    assertEquals(COMMANDS, seen.size());
+    assertTrue(seen.values().stream().allMatch(count -> count.get() == 1), "payments delivered more than once");
+  }
+
+  /**
+   * Queues the commands, then polls each Watcher on its own thread and ticks every Dispatcher on this thread until
+   * the API has no commands left. A fifth of the players join halfway, releasing their pending commands.
+   */
+  private void run(String name, List<Watcher> watchers) throws InterruptedException {
+    ArrayList<String> late = new ArrayList<>();
+    ArrayList<String> online = new ArrayList<>();
+    for (int player = 0; player < PLAYERS; player++) {
+      (player % 5 == 0 ? late : online).add("Player" + player);
+    }
+    TestServer.setOnline(online);
+    for (int id = 1; id <= COMMANDS; id++) {
+      api.queue(new Command(id, String.valueOf(100000 + id / 5), "say delivered " + id, "Player" + (id % PLAYERS),
+            null, "Package " + (id % 20), 4.99, 499, 0, null, id % 3 == 0));
+    }
+    long start = System.nanoTime();
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    ArrayList<Thread> pollers = new ArrayList<>();
+    for (Watcher watcher : watchers) {
+      Thread poller = new Thread(() -> {
+        while (!Thread.currentThread().isInterrupted()) {
+          watcher.run();
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }, "LoadTest-Poll");
+      poller.start();
+      pollers.add(poller);
+    }
+    boolean joined = false;
+    try {
+      while (api.queued() > 0) {
+        if (System.currentTimeMillis() > deadline) {
+          fail(api.queued() + " commands left after " + TIMEOUT_MILLIS + " ms");
+        }
+        if (!joined && dispatched.size() >= COMMANDS / 2) {
+          joined = true;
+          TestServer.setOnline(late);
+          for (String player : late) {
+            watchers.forEach(watcher -> watcher.flushPending(player));
+          }
+        }
+        watchers.forEach(watcher -> watcher.getDispatcher().run());
+        Thread.sleep(1);
+      }
+    } finally {
+      for (Thread poller : pollers) {
+        poller.interrupt();
+        poller.join();
+      }
+      watchers.forEach(Watcher::close);
+    }
+    report(name, COMMANDS, start);
+  }
+
+  private void check() {
+    assertEquals(0, api.queued());
+    assertEquals(COMMANDS, dispatched.size());
+    for (int id = 1; id <= COMMANDS; id++) {
+      assertEquals(1, dispatched.get(id).get(), "dispatches of command " + id);
+      assertEquals(1, api.completions(id), "completions of command " + id);
+    }
+  }
+
+  private YamlConfiguration config(String node) {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("dispatch.max-per-tick", 100);
+    config.set("dispatch.tick-budget-nanos", 50000000L);
+    config.set("acknowledge.retry-delay", 1);
+    config.set("acknowledge.max-retry-delay", 1);
+    if (node != null) {
+      config.set("coordination.type", "file");
+      config.set("coordination.directory", new File(folder, "claims").getPath());
+      config.set("coordination.node-id", node);
+    }
+    return config;
+  }
+
+  private void report(String name, int count, long start) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("[LOAD] %s: %d in %.2f s, %.0f/s, %d requests, %d errors%n", name, count, seconds,
+          count / seconds, api.getRequests(), api.getErrors());
+  }
+}
@@ -0,0 +1,134 @@
+package com.thekdub.craftingstore;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WatcherTest {
+
+  @TempDir
+  File folder;
+
+  private MockStoreApi api;
+  private final List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TestLog.install();
+    TestServer.install();
+    TestServer.onCommand(dispatched::add);
+    api = new MockStoreApi();
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("http.base-url", api.url());
+    APIHandler.init(config);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    TestServer.reset();
+    APIHandler.shutdown();
+    api.close();
+  }
+
+  @Test
+  void takesOverTheClaimOfACrashedNode() throws IOException, InterruptedException {
+    TestServer.setOnline(Collections.singletonList("Notch"));
+    api.queue(command(1, false));
+    crash(1);
+    Watcher survivor = watcher();
+    // The first poll caches the queue's ETag, so only an invalidated cache lets later polls see the command again.
+    survivor.run();
+    survivor.getDispatcher().run();
+    assertEquals(Collections.emptyList(), dispatched);
+    Thread.sleep(1100);
+    deliver(survivor);
+    assertEquals(Arrays.asList("say delivered 1"), dispatched);
+    assertEquals(1, api.completions(1));
+    survivor.close();
+  }
+
+  @Test
+  void takesOverTheClaimOfACrashedNodeAfterAFlushLostIt() throws IOException, InterruptedException {
+    api.queue(command(1, true));
+    Watcher survivor = watcher();
+    survivor.run();
+    assertEquals(1, survivor.getPendingCount());
+    crash(1);
+    TestServer.setOnline(Collections.singletonList("Notch"));
+    assertEquals(1, survivor.flushPending("Notch"));
+    assertEquals(0, survivor.getPendingCount());
+    survivor.getDispatcher().run();
+    assertEquals(Collections.emptyList(), dispatched);
+    Thread.sleep(1100);
+    deliver(survivor);
+    assertEquals(Arrays.asList("say delivered 1"), dispatched);
+    assertEquals(1, api.completions(1));
+    survivor.close();
+  }
+
+  @Test
+  void recordsDispatchesOnDiskBeforeClosing() throws IOException {
+    TestServer.setOnline(Collections.singletonList("Notch"));
+    api.queue(command(1, false));
+    Watcher watcher = watcher();
+    watcher.run();
+    watcher.getDispatcher().run();
+    assertEquals(Arrays.asList("say delivered 1"), dispatched);
+    watcher.close();
+    Journal journal = new Journal(new File(folder, "survivor"), 1000);
+    journal.recover();
+    assertEquals(Collections.singleton(1), journal.getUnacked());
+    journal.close();
+  }
+
+  /**
+   * Claims the passed command for a node that then stops without dispatching it or renewing its claim.
+   */
+  private void crash(int id) throws IOException {
+    FileLockCoordinator crashed = new FileLockCoordinator(new File(new File(folder, "claims"), "store"),
+          new StoreClient("store", "token", new File(folder, "crashed")), config("crashed"));
+    assertEquals(Coordinator.Claim.WON, crashed.claim(id));
+    crashed.close();
+  }
+
+  /**
+   * Polls, dispatches and acknowledges until the Watcher has nothing left to deliver.
+   */
+  private void deliver(Watcher watcher) {
+    for (int i = 0; i < 3; i++) {
+      watcher.run();
+      watcher.getDispatcher().run();
+    }
+    watcher.acknowledgeAll();
+  }
+
+  private Watcher watcher() {
+    return new Watcher(new StoreClient("store", "token", new File(folder, "survivor")), config("survivor"));
+  }
+
+  private YamlConfiguration config(String node) {
+    YamlConfiguration config = new YamlConfiguration();
+    config.set("coordination.type", "file");
+    config.set("coordination.directory", new File(folder, "claims").getPath());
+    config.set("coordination.node-id", node);
+    config.set("coordination.lease-seconds", 1);
+    config.set("polling.max-interval", 0);
+    return config;
+  }
+
+  private static Command command(int id, boolean requireOnline) {
+    return new Command(id, "100000", "say delivered " + id, "Notch", null, "VIP", 4.99, 499, 0, null,
+          requireOnline);
+  }
+}